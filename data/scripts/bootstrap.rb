@@ -29,6 +29,16 @@ class MessageDecoderContext
     decoder = ProcMessageDecoder.new block
     @handler.register_decoder name, decoder
   end
+
+  # Method to resolve the slot of a packet variable, so that the name of the variable is only looked up once when registering.
+  def slot(packet_name, variable_name)
+    layout = $ctx.get_packet_layout packet_name
+    raise "no such packet '#{packet_name}'" if layout.nil?
+
+    slot = layout.get_slot variable_name
+    raise "no such variable '#{variable_name}' for packet '#{packet_name}'" if slot < 0
+    slot
+  end
 end
 
 # The class used to help register message encoders to the message handler context.
@@ -22,10 +22,15 @@
 
 package org.nova;
 
+import org.nova.core.ServiceType;
+import org.nova.core.TickEngine;
+import org.nova.net.IoMode;
 import org.nova.util.script.Script;
 
+import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Hadyn Richard
@@ -47,11 +52,33 @@ public final class Configuration {
      */
     private int basePort;
 
+    /**
+     * The modes to serve the connections for each service type with.
+     */
+    private Map<ServiceType, IoMode> ioModes;
+
+    /**
+     * The period of each game tick in milliseconds.
+     */
+    private long tickPeriod = TickEngine.DEFAULT_PERIOD;
+
+    /**
+     * The idle limits in milliseconds for the clients of each service type.
+     */
+    private Map<ServiceType, Long> idleLimits;
+
+    /**
+     * The flag for if programs are generated for the packet codecs.
+     */
+    private boolean generateCodecs = true;
+
     /**
      * Constructs a new {@link Configuration};
      */
     public Configuration() {
         scripts = new LinkedList<Script>();
+        ioModes = new EnumMap<ServiceType, IoMode>(ServiceType.class);
+        idleLimits = new EnumMap<ServiceType, Long>(ServiceType.class);
     }
 
     /**
@@ -107,4 +134,82 @@ public final class Configuration {
     public int getBasePort() {
         return basePort;
     }
+
+    /**
+     * Sets the mode to serve the connections for a service type with.
+     *
+     * @param serviceType   The service type.
+     * @param ioMode        The mode.
+     */
+    public void setIoMode(ServiceType serviceType, IoMode ioMode) {
+        ioModes.put(serviceType, ioMode);
+    }
+
+    /**
+     * Gets the mode to serve the connections for a service type with.
+     *
+     * @param serviceType   The service type.
+     * @return              The mode, the reactor mode if one was not configured.
+     */
+    public IoMode getIoMode(ServiceType serviceType) {
+        IoMode ioMode = ioModes.get(serviceType);
+        return ioMode == null ? IoMode.REACTOR : ioMode;
+    }
+
+    /**
+     * Sets the period of each game tick.
+     *
+     * @param tickPeriod    The period in milliseconds.
+     */
+    public void setTickPeriod(long tickPeriod) {
+        this.tickPeriod = tickPeriod;
+    }
+
+    /**
+     * Gets the period of each game tick.
+     *
+     * @return  The period in milliseconds.
+     */
+    public long getTickPeriod() {
+        return tickPeriod;
+    }
+
+    /**
+     * Sets if programs are generated for the packet codecs, otherwise the codecs interpret their blocks.
+     *
+     * @param generateCodecs    The generate codecs flag.
+     */
+    public void setGenerateCodecs(boolean generateCodecs) {
+        this.generateCodecs = generateCodecs;
+    }
+
+    /**
+     * Gets if programs are generated for the packet codecs.
+     *
+     * @return  If programs are generated for the packet codecs.
+     */
+    public boolean generateCodecs() {
+        return generateCodecs;
+    }
+
+    /**
+     * Sets the idle limit for the clients of a service type.
+     *
+     * @param serviceType   The service type.
+     * @param idleLimit     The idle limit in milliseconds, or zero for no limit.
+     */
+    public void setIdleLimit(ServiceType serviceType, long idleLimit) {
+        idleLimits.put(serviceType, idleLimit);
+    }
+
+    /**
+     * Gets the idle limit for the clients of a service type.
+     *
+     * @param serviceType   The service type.
+     * @return              The idle limit in milliseconds, or zero if there is no limit.
+     */
+    public long getIdleLimit(ServiceType serviceType) {
+        Long idleLimit = idleLimits.get(serviceType);
+        return idleLimit == null ? 0L : idleLimit;
+    }
 }
@@ -22,18 +22,44 @@
 
 package org.nova;
 
+import org.nova.core.EventRingDispatcher;
+import org.nova.core.Service;
+import org.nova.core.ServiceManager;
+import org.nova.core.ServiceType;
+import org.nova.core.TickEngine;
 import org.nova.io.ConfigurationParser;
+import org.nova.io.PacketParser;
+import org.nova.net.BlockingAcceptor;
+import org.nova.net.Client;
+import org.nova.net.ClientFactory;
+import org.nova.net.ClientPool;
+import org.nova.net.IdleReaper;
 import org.nova.net.MessageHandler;
 import org.nova.net.PacketHandler;
+import org.nova.net.ReactorGroup;
+import org.nova.net.buffer.BufferArena;
+import org.nova.net.event.MessageDecodedEvent;
+import org.nova.net.event.SocketChannelEvent;
+import org.nova.net.event.handler.SocketChannelAcceptEventHandler;
+import org.nova.net.event.handler.SocketChannelReadEventHandler;
+import org.nova.net.event.handler.SocketChannelWriteEventHandler;
+import org.nova.net.packet.codec.PacketCodecCompiler;
+import org.nova.task.Task;
+import org.nova.task.TimerWheel;
 import org.nova.util.script.Script;
 import org.nova.util.script.ScriptEnvironment;
+import org.nova.util.meta.PacketData;
 import org.nova.util.script.context.GameEnvironmentContext;
 import org.xml.sax.SAXException;
 
 import javax.script.ScriptException;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
 /**
@@ -46,6 +72,11 @@ public final class Server {
      */
     private static final Logger logger = Logger.getLogger(Server.class.getName());
 
+    /**
+     * The amount of buckets that the idle reaper splits the client slots into.
+     */
+    private static final int IDLE_REAPER_BUCKETS = 8;
+
     /**
      * The command line arguments.
      * 
@@ -87,6 +118,31 @@ public final class Server {
      */
     private Configuration configuration;
 
+    /**
+     * The service manager for each of the services.
+     */
+    private ServiceManager serviceManager;
+
+    /**
+     * The executor which the services and the reactors execute their tasks on.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The pool of the clients for each of the services.
+     */
+    private ClientPool clientPool;
+
+    /**
+     * The tick engine which pulses the game service.
+     */
+    private TickEngine tickEngine;
+
+    /**
+     * The timer wheel which is advanced each game tick.
+     */
+    private TimerWheel timerWheel;
+
     /**
      * Constructs a new {@link Server};
      */
@@ -112,7 +168,16 @@ public final class Server {
             throw new RuntimeException("EEK! no such configuration for server mode");
         }
 
+        /* Set if programs are generated for the packet codecs before any of them are created */
+        PacketCodecCompiler.setEnabled(configuration.generateCodecs());
+
+        /* Parse the packet meta data, which compiles the layout of each packet */
+        logger.info("Parsing the packet meta data...");
+        PacketParser packetParser = new PacketParser(new FileInputStream("./data/packets.xml"));
+        Map<String, PacketData> packetData = packetParser.parse();
+
         GameEnvironmentContext environmentContext = new GameEnvironmentContext();
+        environmentContext.setPacketData(packetData);
         ScriptEnvironment scriptEnvironment = new ScriptEnvironment("jruby", environmentContext);
 
         MessageHandler handler = new MessageHandler();
@@ -122,5 +187,119 @@ public final class Server {
         for(Script script : configuration.getScripts()) {
             scriptEnvironment.eval(script);
         }
+
+        /* Create the services which handle the messages decoded from the clients */
+        logger.info("Creating the services...");
+        executor = new ForkJoinPool();
+        serviceManager = new ServiceManager();
+        for(ServiceType serviceType : ServiceType.values()) {
+            EventRingDispatcher<MessageDecodedEvent> dispatcher = new EventRingDispatcher<MessageDecodedEvent>(MessageDecodedEvent.FACTORY);
+            serviceManager.register(serviceType, new Service(executor, dispatcher) {});
+        }
+
+        logger.info("Binding the network services...");
+        initNetwork(handler);
+
+        /* Pulse the game service each tick, followed by the rest of the services */
+        logger.info("Starting the game tick...");
+        tickEngine = new TickEngine(serviceManager.get(ServiceType.GAME), configuration.getTickPeriod());
+        for(ServiceType serviceType : ServiceType.values()) {
+            if(serviceType != ServiceType.GAME) {
+                Service service = serviceManager.get(serviceType);
+                service.start();
+                tickEngine.addPhase(createPulseTask(service), true);
+            }
+        }
+
+        /* Advance the timers each tick and sweep a bucket of the clients for idle connections every tick */
+        timerWheel = new TimerWheel();
+        tickEngine.addPhase(timerWheel, true);
+
+        IdleReaper idleReaper = new IdleReaper(clientPool, IDLE_REAPER_BUCKETS);
+        for(ServiceType serviceType : ServiceType.values()) {
+            idleReaper.setIdleLimit(serviceType, configuration.getIdleLimit(serviceType));
+        }
+        timerWheel.schedule(idleReaper, 1L, 1);
+
+        new Thread(tickEngine, "game-tick").start();
+    }
+
+    /**
+     * Creates a task which pulses a service, so that the service can be added as a tick phase.
+     *
+     * @param service   The service to pulse.
+     * @return          The created task.
+     */
+    private static Task createPulseTask(final Service service) {
+        return new Task() {
+
+            @Override
+            public void execute() {
+                service.pulse();
+            }
+        };
+    }
+
+    /**
+     * Binds and starts serving the connections for each service, with either the reactors or
+     * a thread for each connection depending on the mode configured for the service. Each
+     * service listens on the base port offset by the ordinal of its type.
+     *
+     * @param messageHandler    The message handler for the clients.
+     */
+    private void initNetwork(final MessageHandler messageHandler) throws IOException {
+
+        // TODO: Register the packet codecs once they are parsed on startup
+        final PacketHandler packetHandler = new PacketHandler();
+        final BufferArena arena = new BufferArena();
+
+        clientPool = new ClientPool(new ClientFactory() {
+
+            @Override
+            public Client create(SelectionKey selectionKey) {
+                return new Client(selectionKey, packetHandler, messageHandler, arena);
+            }
+        });
+
+        SocketChannelAcceptEventHandler acceptHandler = new SocketChannelAcceptEventHandler(clientPool);
+        ReactorGroup reactorGroup = null;
+
+        for(ServiceType serviceType : ServiceType.values()) {
+            InetSocketAddress address = new InetSocketAddress(configuration.getBasePort() + serviceType.ordinal());
+
+            switch(configuration.getIoMode(serviceType)) {
+
+                case BLOCKING:
+
+                    /* Serve each of the connections with its own thread */
+                    BlockingAcceptor acceptor = new BlockingAcceptor(packetHandler, messageHandler, arena, serviceManager, serviceType);
+                    acceptor.setClientPool(clientPool);
+                    acceptor.bind(address);
+                    new Thread(acceptor, "acceptor-" + serviceType.name().toLowerCase()).start();
+                    break;
+
+                default:
+
+                    /* Create the reactors for the first service served by them */
+                    if(reactorGroup == null) {
+                        reactorGroup = new ReactorGroup(Runtime.getRuntime().availableProcessors(), ReactorGroup.SelectionPolicy.LEAST_LOADED);
+                        reactorGroup.registerHandler(SocketChannelEvent.class, acceptHandler);
+                        reactorGroup.registerHandler(SocketChannelEvent.class, new SocketChannelReadEventHandler(clientPool, serviceManager));
+                        reactorGroup.registerHandler(SocketChannelEvent.class, new SocketChannelWriteEventHandler(clientPool));
+                    }
+
+                    /* Hand the clients accepted on the port to the service */
+                    acceptHandler.setServiceType(address.getPort(), serviceType);
+                    reactorGroup.bind(address);
+                    break;
+            }
+
+            logger.info("Serving the " + serviceType.name().toLowerCase() + " service on port " + address.getPort()
+                        + " with " + configuration.getIoMode(serviceType).name().toLowerCase() + " io");
+        }
+
+        if(reactorGroup != null) {
+            reactorGroup.start(executor);
+        }
     }
 }
@@ -22,7 +22,11 @@
 
 package org.nova.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import org.nova.event.Event;
@@ -32,20 +36,43 @@ import org.nova.event.EventHandlerChain;
 /**
  * Created by Trey, Hadyn Richard
  *
+ * Notes:
+ *
+ *          The event handler chains are looked up from an immutable snapshot of the registry so that
+ *          events may be dispatched from any thread without locking. Registering a chain publishes a
+ *          new snapshot, which lets handlers be added at runtime while events are being dispatched.
+ *
+ *          A handler registered for an event class also handles each of its subclasses, and a handler
+ *          registered for an interface handles each event class that implements it. The handlers for each
+ *          concrete event class are resolved once into a merged chain, with the handlers for the most
+ *          specific classes first and the handlers for interfaces last. The merged chains are cached by
+ *          their class and are invalidated whenever a handler is registered or a chain unregistered.
+ *
  * TODO: Add in the required event chains set!
  */
 public abstract class Dispatcher {
 
     /**
-     * The map for each of the event handler chains.
+     * The snapshot of the map for each of the event handler chains.
+     */
+    private volatile Map<Class<? extends Event>, EventHandlerChain<?>> handlerChains;
+
+    /**
+     * The snapshot of the cached handler chains resolved for each concrete event class.
      */
-    private Map<Class<? extends Event>, EventHandlerChain<?>> handlerChains;
+    private volatile Map<Class<?>, EventHandlerChain<?>> resolvedChains;
+
+    /**
+     * The chain cached for event classes which do not have any handlers.
+     */
+    private static final EventHandlerChain<?> NO_CHAIN = new EventHandlerChain();
 
     /**
      * Constructs a new {@link Dispatcher};
      */
     public Dispatcher() {
-        handlerChains = new HashMap<Class<? extends Event>, EventHandlerChain<?>>();
+        handlerChains = Collections.emptyMap();
+        resolvedChains = Collections.emptyMap();
     }
 
     /**
@@ -70,17 +97,25 @@ public abstract class Dispatcher {
      * @return              If the register map already contained an event handler
      *                      chain for the specified event.
      */
-    public boolean registerHandler(Class<? extends Event> eventClass, EventHandler<?> handler) {
-        if(!handlerChains.containsKey(eventClass)) {
-            EventHandlerChain chain = new EventHandlerChain();
-            chain.addToBack(handler);
-            handlerChains.put(eventClass, chain);
-            return false;
-        } else {
-            EventHandlerChain chain = handlerChains.get(eventClass);
+    public synchronized boolean registerHandler(Class<? extends Event> eventClass, EventHandler<?> handler) {
+        EventHandlerChain chain = handlerChains.get(eventClass);
+        if(chain != null) {
+
+            /* The chain publishes its own snapshot of handlers */
             chain.addToBack(handler);
+            resolvedChains = Collections.emptyMap();
             return true;
         }
+
+        chain = new EventHandlerChain();
+        chain.addToBack(handler);
+
+        /* Publish a new snapshot with the created chain */
+        Map<Class<? extends Event>, EventHandlerChain<?>> updated = new HashMap<Class<? extends Event>, EventHandlerChain<?>>(handlerChains);
+        updated.put(eventClass, chain);
+        handlerChains = Collections.unmodifiableMap(updated);
+        resolvedChains = Collections.emptyMap();
+        return false;
     }
 
     /**
@@ -89,17 +124,89 @@ public abstract class Dispatcher {
      * @param eventClass    The class of the event to unregister the handlers for.
      * @return              The unregistered event handler chain.
      */
-    public EventHandlerChain<?> unregisterChain(Class<? extends Event> eventClass) {
-        return handlerChains.remove(eventClass);
+    public synchronized EventHandlerChain<?> unregisterChain(Class<? extends Event> eventClass) {
+        if(!handlerChains.containsKey(eventClass)) {
+            return null;
+        }
+
+        /* Publish a new snapshot without the chain */
+        Map<Class<? extends Event>, EventHandlerChain<?>> updated = new HashMap<Class<? extends Event>, EventHandlerChain<?>>(handlerChains);
+        EventHandlerChain<?> chain = updated.remove(eventClass);
+        handlerChains = Collections.unmodifiableMap(updated);
+        resolvedChains = Collections.emptyMap();
+        return chain;
     }
 
     /**
      * Gets the handler chain for an event.
      * 
      * @param event The event to get the handler chain for.
-     * @return      The handler chain.
+     * @return      The handler chain or null if there are no handlers for the event.
      */
     public EventHandlerChain getHandlerChainFor(Event event) {
-        return handlerChains.get(event.getClass());
+        EventHandlerChain<?> chain = resolvedChains.get(event.getClass());
+        if(chain == null) {
+            chain = resolveChain(event.getClass());
+        }
+
+        return chain == NO_CHAIN ? null : chain;
+    }
+
+    /**
+     * Resolves and caches the handler chain for an event class.
+     *
+     * @param eventClass    The class of the event to resolve the chain for.
+     * @return              The resolved chain or {@link #NO_CHAIN} if there are no handlers.
+     */
+    private synchronized EventHandlerChain<?> resolveChain(Class<?> eventClass) {
+
+        /* Check if another thread resolved the chain while waiting for the lock */
+        EventHandlerChain<?> chain = resolvedChains.get(eventClass);
+        if(chain != null) {
+            return chain;
+        }
+
+        /* Collect the registered chains, the classes from the most specific then the interfaces */
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for(Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+            types.add(type);
+        }
+
+        for(int i = 0; i < types.size(); i++) {
+            for(Class<?> type : types.get(i).getInterfaces()) {
+                if(!types.contains(type)) {
+                    types.add(type);
+                }
+            }
+        }
+
+        List<EventHandlerChain<?>> chains = new ArrayList<EventHandlerChain<?>>();
+        for(Class<?> type : types) {
+            EventHandlerChain<?> registered = handlerChains.get(type);
+            if(registered != null) {
+                chains.add(registered);
+            }
+        }
+
+        /* Use the registered chain directly if there is only one, otherwise merge the chains */
+        if(chains.isEmpty()) {
+            chain = NO_CHAIN;
+        } else if(chains.size() == 1) {
+            chain = chains.get(0);
+        } else {
+            EventHandlerChain merged = new EventHandlerChain();
+            for(EventHandlerChain<?> registered : chains) {
+                for(EventHandler<?> handler : registered.getHandlers()) {
+                    merged.addToBack(handler);
+                }
+            }
+            chain = merged;
+        }
+
+        /* Publish a new snapshot with the resolved chain */
+        Map<Class<?>, EventHandlerChain<?>> updated = new IdentityHashMap<Class<?>, EventHandlerChain<?>>(resolvedChains);
+        updated.put(eventClass, chain);
+        resolvedChains = updated;
+        return chain;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.nova.event.Event;
+import org.nova.event.EventFactory;
+import org.nova.event.EventHandlerChain;
+import org.nova.event.EventTranslator;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Events handled by this dispatcher are published into a bounded ring of preallocated events and
+ *          are propagated in a batch each time the dispatcher is pulsed. This hands events from the threads
+ *          of the network services over to the single thread which pulses the service, such as the game
+ *          tick, so that the handlers never run concurrently with each other.
+ *
+ *          Publishers claim a sequence by compare and set, fill in the event in its slot with a translator
+ *          and then mark the slot as available for that sequence, so publishing does not allocate. Events
+ *          created elsewhere can still be handed to the ring, in which case the slot refers to the event
+ *          instead. The consumer propagates events in the order of their sequences and stops at the first
+ *          slot which has been claimed but not yet filled in, which is then propagated by the next pulse.
+ *          A slot is only freed once its event has been propagated and cleared, so handlers must not keep a
+ *          reference to an event from the ring after handling it.
+ *
+ *          When the ring is full, publishers wait for the consumer to free a slot for at most the publish
+ *          timeout. If no slot is freed in time the event is dropped and counted, so that a stalled consumer
+ *          cannot hold up the network threads forever.
+ *
+ *          The first thread to pulse the dispatcher becomes its consumer, and pulsing it from any other
+ *          thread fails. Events handled from the consumer thread are propagated immediately, whether or not
+ *          it is pulsing, since it would otherwise be waiting on itself to free a slot.
+ */
+public final class EventRingDispatcher<E extends Event> extends Dispatcher {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(EventRingDispatcher.class.getName());
+
+    /**
+     * The default amount of slots in the ring.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The default time in milliseconds that publishers wait for a free slot.
+     */
+    public static final long DEFAULT_PUBLISH_TIMEOUT = 100L;
+
+    /**
+     * The maximum time in nanoseconds that a waiting publisher parks for at once.
+     */
+    private static final long MAXIMUM_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    /**
+     * The factory which created the events in the slots.
+     */
+    private EventFactory<E> factory;
+
+    /**
+     * The preallocated event in each slot.
+     */
+    private E[] slots;
+
+    /**
+     * The event handed to each slot instead of its preallocated event, or null.
+     */
+    private Event[] handedEvents;
+
+    /**
+     * The sequence that each slot is available for, or -1 if the slot has never been published to.
+     */
+    private AtomicLongArray availableSequences;
+
+    /**
+     * The mask to get the index of the slot for a sequence.
+     */
+    private int mask;
+
+    /**
+     * The next sequence to be claimed by a publisher.
+     */
+    private AtomicLong claimSequence;
+
+    /**
+     * The next sequence to be propagated by the consumer.
+     */
+    private AtomicLong consumerSequence;
+
+    /**
+     * The thread which consumes the events, null until the dispatcher is first pulsed.
+     */
+    private volatile Thread consumerThread;
+
+    /**
+     * The time in nanoseconds that publishers wait for a free slot.
+     */
+    private volatile long publishTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PUBLISH_TIMEOUT);
+
+    /**
+     * The amount of events which were dropped because the ring was full.
+     */
+    private AtomicLong droppedCount;
+
+    /**
+     * Constructs a new {@link EventRingDispatcher};
+     *
+     * @param factory   The factory to create the events in the slots with.
+     */
+    public EventRingDispatcher(EventFactory<E> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new {@link EventRingDispatcher};
+     *
+     * @param factory   The factory to create the events in the slots with.
+     * @param capacity  The amount of slots in the ring, must be a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public EventRingDispatcher(EventFactory<E> factory, int capacity) {
+        if(capacity <= 0 || (capacity & capacity - 1) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+
+        /* Preallocate the event in each of the slots */
+        slots = (E[]) new Event[capacity];
+        for(int i = 0; i < capacity; i++) {
+            slots[i] = factory.create();
+        }
+
+        handedEvents = new Event[capacity];
+        availableSequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++) {
+            availableSequences.set(i, -1L);
+        }
+
+        mask = capacity - 1;
+        claimSequence = new AtomicLong();
+        consumerSequence = new AtomicLong();
+        droppedCount = new AtomicLong();
+
+        this.factory = factory;
+    }
+
+    /**
+     * Sets the time that publishers wait for a free slot while the ring is full, before dropping their event.
+     *
+     * @param timeout   The timeout in milliseconds, or zero to drop events as soon as the ring is full.
+     */
+    public void setPublishTimeout(long timeout) {
+        if(timeout < 0L) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        publishTimeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Publishes an event to the ring by filling in the preallocated event of the next slot.
+     *
+     * @param translator    The translator to fill in the event with.
+     * @param first         The first value to fill in the event with.
+     * @param second        The second value to fill in the event with.
+     * @return              If the event was published, otherwise the ring was full and it was dropped.
+     */
+    public <A, B> boolean publish(EventTranslator<E, A, B> translator, A first, B second) {
+
+        /* Fill in and propagate a slot immediately if published from the consuming thread */
+        if(Thread.currentThread() == consumerThread) {
+            E event = factory.create();
+            translator.translate(event, first, second);
+            propagate(event);
+            return true;
+        }
+
+        long sequence = claim();
+        if(sequence < 0L) {
+            return false;
+        }
+
+        /* Fill in the event and then mark its slot as available */
+        int index = (int) sequence & mask;
+        translator.translate(slots[index], first, second);
+        availableSequences.set(index, sequence);
+        return true;
+    }
+
+    /**
+     * Publishes an event which was created elsewhere to the ring to be propagated by the next pulse.
+     * The event is dropped if the ring stays full for longer than the publish timeout.
+     *
+     * @param event The event to publish.
+     */
+    @Override
+    public void handleEvent(Event event) {
+
+        /* Propagate the event immediately if it was handled from the consuming thread */
+        if(Thread.currentThread() == consumerThread) {
+            propagate(event);
+            return;
+        }
+
+        long sequence = claim();
+        if(sequence < 0L) {
+            return;
+        }
+
+        /* Store the event and then mark its slot as available */
+        int index = (int) sequence & mask;
+        handedEvents[index] = event;
+        availableSequences.set(index, sequence);
+    }
+
+    /**
+     * Claims the next sequence, waiting for the consumer to free a slot while the ring is full.
+     *
+     * @return  The claimed sequence, or -1 if no slot was freed before the publish timeout.
+     */
+    private long claim() {
+        long deadline = 0L;
+        int spins = 0;
+        for(;;) {
+            long sequence = claimSequence.get();
+            if(sequence - consumerSequence.get() < slots.length) {
+                if(claimSequence.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+                continue;
+            }
+
+            /* The ring is full, wait for a slot until the deadline and then drop the event */
+            long now = System.nanoTime();
+            if(spins++ == 0) {
+                deadline = now + publishTimeout;
+            }
+
+            if(now - deadline >= 0L) {
+                droppedCount.incrementAndGet();
+                return -1L;
+            }
+
+            if(spins < 64) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, Math.min(MAXIMUM_PARK_NANOS, deadline - now));
+            }
+        }
+    }
+
+    /**
+     * Propagates each of the events published to the ring on the calling thread. The executor is
+     * not used, the handlers for the events are always called from the consumer thread.
+     *
+     * @param executor  The executor service to dispatch events to.
+     */
+    @Override
+    public void dispatchEvents(ExecutorService executor) {
+
+        /* The first thread to pulse the dispatcher becomes its consumer */
+        Thread current = Thread.currentThread();
+        if(consumerThread == null) {
+            consumerThread = current;
+        } else if(consumerThread != current) {
+            throw new IllegalStateException("events are consumed by " + consumerThread.getName());
+        }
+
+        /* Only propagate the events published before the pulse started */
+        long sequence = consumerSequence.get();
+        long end = claimSequence.get();
+        while(sequence < end) {
+            int index = (int) sequence & mask;
+            if(availableSequences.get(index) != sequence) {
+                break;
+            }
+
+            Event event = handedEvents[index];
+            if(event != null) {
+                handedEvents[index] = null;
+            } else {
+                event = slots[index];
+            }
+
+            try {
+                propagate(event);
+            } catch(Exception ex) {
+                logger.log(Level.SEVERE, "Exception while propagating an event", ex);
+            }
+
+            /* Clear the event and then free its slot, as publishers fill in the slot once it is freed */
+            if(event == slots[index]) {
+                factory.clear(slots[index]);
+            }
+            consumerSequence.set(++sequence);
+        }
+    }
+
+    /**
+     * Propagates an event down its handler chain.
+     *
+     * @param event The event to propagate.
+     */
+    private void propagate(Event event) {
+        EventHandlerChain chain = getHandlerChainFor(event);
+        if(chain != null) {
+            chain.dispatch(event);
+        }
+    }
+
+    /**
+     * Gets the amount of events waiting to be propagated.
+     *
+     * @return  The amount of events.
+     */
+    public int size() {
+        return (int) (claimSequence.get() - consumerSequence.get());
+    }
+
+    /**
+     * Gets the amount of slots in the ring.
+     *
+     * @return  The capacity.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the amount of events which were dropped because the ring stayed full.
+     *
+     * @return  The amount of events.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
@@ -38,6 +38,11 @@ public abstract class Service {
      */
     private Dispatcher dispatcher;
 
+    /**
+     * The flag for if the service is running.
+     */
+    private volatile boolean running;
+
     /**
      * Constructs a new {@link Service};
      *
@@ -49,6 +54,20 @@ public abstract class Service {
         this.dispatcher = dispatcher;
     }
 
+    /**
+     * Starts this service.
+     */
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Stops this service.
+     */
+    public void stop() {
+        running = false;
+    }
+
     /**
      * Pulses this service.
      */
@@ -71,6 +90,6 @@ public abstract class Service {
      * @return  If the service is running.
      */
     public boolean isRunning() {
-        return false;
+        return running;
     }
 }
\ No newline at end of file
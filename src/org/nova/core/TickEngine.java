@@ -0,0 +1,399 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.core;
+
+import org.nova.task.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Pulses a service on a fixed period, followed by each of the phases registered to the engine.
+ *
+ * Notes:
+ *
+ *          Each tick is scheduled against an absolute deadline on the monotonic clock, rather than by
+ *          sleeping for the period after a tick finishes, so the time taken by each tick and the error of
+ *          each sleep do not accumulate into drift.
+ *
+ *          When a tick takes longer than the period it is counted as an overrun and the next tick starts
+ *          immediately. While the engine is catching up, the non-critical phases are skipped. If the engine
+ *          falls more than a whole period behind the missed ticks are dropped, instead of being run back to
+ *          back, and the schedule continues from the current time.
+ */
+public final class TickEngine implements Runnable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(TickEngine.class.getName());
+
+    /**
+     * The default period of each tick in milliseconds.
+     */
+    public static final long DEFAULT_PERIOD = 600L;
+
+    /**
+     * The service to pulse each tick.
+     */
+    private Service service;
+
+    /**
+     * The period of each tick in nanoseconds.
+     */
+    private long periodNanos;
+
+    /**
+     * The phases which are executed each tick.
+     */
+    private List<Task> criticalPhases;
+
+    /**
+     * The phases which are skipped while the engine is catching up after an overrun.
+     */
+    private List<Task> nonCriticalPhases;
+
+    /**
+     * The flag for if the engine is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The thread running the engine, which is unparked when the engine is stopped.
+     */
+    private volatile Thread thread;
+
+    /**
+     * The amount of ticks which have been executed.
+     */
+    private volatile long tickCount;
+
+    /**
+     * The amount of ticks which took longer than the period.
+     */
+    private volatile long overrunCount;
+
+    /**
+     * The amount of ticks which were dropped after the engine fell behind.
+     */
+    private volatile long droppedCount;
+
+    /**
+     * The amount of ticks which skipped the non-critical phases.
+     */
+    private volatile long degradedCount;
+
+    /**
+     * The duration of the last tick in nanoseconds.
+     */
+    private volatile long lastDuration;
+
+    /**
+     * The longest duration of a tick in nanoseconds.
+     */
+    private volatile long maximumDuration;
+
+    /**
+     * The total duration of every tick in nanoseconds.
+     */
+    private volatile long totalDuration;
+
+    /**
+     * The time in nanoseconds that the last tick started after its deadline.
+     */
+    private volatile long lastJitter;
+
+    /**
+     * The longest time in nanoseconds that a tick started after its deadline.
+     */
+    private volatile long maximumJitter;
+
+    /**
+     * Constructs a new {@link TickEngine};
+     *
+     * @param service   The service to pulse each tick.
+     */
+    public TickEngine(Service service) {
+        this(service, DEFAULT_PERIOD);
+    }
+
+    /**
+     * Constructs a new {@link TickEngine};
+     *
+     * @param service   The service to pulse each tick.
+     * @param period    The period of each tick in milliseconds.
+     */
+    public TickEngine(Service service, long period) {
+        if(period <= 0L) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+
+        criticalPhases = new ArrayList<Task>();
+        nonCriticalPhases = new ArrayList<Task>();
+
+        this.service = service;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+    }
+
+    /**
+     * Adds a phase which is executed each tick after the service has been pulsed. Phases are
+     * executed in the order that they were added, with the critical phases first. Phases should
+     * be added before the engine is started.
+     *
+     * @param phase     The phase to add.
+     * @param critical  If the phase should be executed even while the engine is catching up.
+     */
+    public void addPhase(Task phase, boolean critical) {
+        if(critical) {
+            criticalPhases.add(phase);
+        } else {
+            nonCriticalPhases.add(phase);
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        running = true;
+        service.start();
+
+        try {
+            boolean degraded = false;
+            long deadline = System.nanoTime();
+            while(running) {
+
+                /* Wait for the deadline of the tick */
+                long now;
+                while((now = System.nanoTime()) < deadline) {
+                    LockSupport.parkNanos(this, deadline - now);
+                    if(!running) {
+                        return;
+                    }
+                }
+
+                tick(now - deadline, degraded);
+
+                /* Schedule the next tick from the deadline of this tick */
+                long end = System.nanoTime();
+                deadline += periodNanos;
+
+                degraded = end > deadline;
+                if(degraded) {
+                    overrunCount++;
+
+                    /* Drop the ticks which were missed entirely */
+                    long missed = (end - deadline) / periodNanos;
+                    if(missed > 0L) {
+                        droppedCount += missed;
+                        deadline += missed * periodNanos;
+                    }
+                }
+            }
+        } finally {
+            service.stop();
+            thread = null;
+        }
+    }
+
+    /**
+     * Executes a single tick.
+     *
+     * @param jitter    The time in nanoseconds that the tick started after its deadline.
+     * @param degraded  If the non-critical phases should be skipped.
+     */
+    private void tick(long jitter, boolean degraded) {
+        long start = System.nanoTime();
+
+        execute(service);
+        for(int i = 0; i < criticalPhases.size(); i++) {
+            execute(criticalPhases.get(i));
+        }
+
+        if(degraded) {
+            degradedCount++;
+        } else {
+            for(int i = 0; i < nonCriticalPhases.size(); i++) {
+                execute(nonCriticalPhases.get(i));
+            }
+        }
+
+        /* Record the statistics for the tick */
+        long duration = System.nanoTime() - start;
+        lastDuration = duration;
+        totalDuration += duration;
+        if(duration > maximumDuration) {
+            maximumDuration = duration;
+        }
+
+        lastJitter = jitter;
+        if(jitter > maximumJitter) {
+            maximumJitter = jitter;
+        }
+
+        tickCount++;
+    }
+
+    /**
+     * Pulses the service, logging any exception so that the following phases still execute.
+     *
+     * @param service   The service to pulse.
+     */
+    private void execute(Service service) {
+        try {
+            service.pulse();
+        } catch(RuntimeException ex) {
+            logger.log(Level.SEVERE, "Exception while pulsing the service", ex);
+        }
+    }
+
+    /**
+     * Executes a phase, logging any exception so that the following phases still execute.
+     *
+     * @param phase The phase to execute.
+     */
+    private void execute(Task phase) {
+        try {
+            phase.execute();
+        } catch(RuntimeException ex) {
+            logger.log(Level.SEVERE, "Exception while executing a tick phase", ex);
+        }
+    }
+
+    /**
+     * Stops the engine once the current tick has finished, waking the engine if it is waiting for the next tick.
+     */
+    public void stop() {
+        running = false;
+
+        Thread runner = thread;
+        if(runner != null) {
+            LockSupport.unpark(runner);
+        }
+    }
+
+    /**
+     * Gets if the engine is running.
+     *
+     * @return  If the engine is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the period of each tick.
+     *
+     * @return  The period in nanoseconds.
+     */
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Gets the amount of ticks which have been executed.
+     *
+     * @return  The amount of ticks.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Gets the amount of ticks which took longer than the period.
+     *
+     * @return  The amount of overruns.
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Gets the amount of ticks which were dropped after the engine fell more than a period behind.
+     *
+     * @return  The amount of dropped ticks.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Gets the amount of ticks which skipped the non-critical phases.
+     *
+     * @return  The amount of degraded ticks.
+     */
+    public long getDegradedCount() {
+        return degradedCount;
+    }
+
+    /**
+     * Gets the duration of the last tick.
+     *
+     * @return  The duration in nanoseconds.
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Gets the longest duration of a tick.
+     *
+     * @return  The duration in nanoseconds.
+     */
+    public long getMaximumDuration() {
+        return maximumDuration;
+    }
+
+    /**
+     * Gets the average duration of each tick.
+     *
+     * @return  The duration in nanoseconds.
+     */
+    public long getAverageDuration() {
+        long ticks = tickCount;
+        return ticks == 0L ? 0L : totalDuration / ticks;
+    }
+
+    /**
+     * Gets the time that the last tick started after its deadline.
+     *
+     * @return  The jitter in nanoseconds.
+     */
+    public long getLastJitter() {
+        return lastJitter;
+    }
+
+    /**
+     * Gets the longest time that a tick started after its deadline.
+     *
+     * @return  The jitter in nanoseconds.
+     */
+    public long getMaximumJitter() {
+        return maximumJitter;
+    }
+}
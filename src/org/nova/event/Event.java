@@ -49,4 +49,14 @@ public abstract class Event<T> {
     public T getSource() {
         return source;
     }
+
+    /**
+     * Sets the source of the event, used by events which are recycled
+     * rather than created for each occurrence.
+     *
+     * @param source    The source.
+     */
+    protected final void setSource(T source) {
+        this.source = source;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.event;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Creates the events which are preallocated and reused by a ring, and clears them once they have been propagated.
+ */
+public abstract class EventFactory<E extends Event> {
+
+    /**
+     * Creates a new event to be reused.
+     *
+     * @return  The created event.
+     */
+    public abstract E create();
+
+    /**
+     * Clears an event after it has been propagated, so that it does not keep references
+     * to its values until it is reused.
+     *
+     * @param event The event to clear.
+     */
+    public void clear(E event) {}
+}
@@ -20,36 +20,59 @@
  * THE SOFTWARE.
  */
 
-
 package org.nova.event;
 
-import java.util.Deque;
-import java.util.LinkedList;
-
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          The handlers are compiled into an array snapshot which is only rebuilt when a handler
+ *          is added or removed. Contexts capture the snapshot when they are created or reset, so
+ *          changing the chain never affects an event that is already propagating.
  */
 public final class EventHandlerChain<T extends Event> {
-    
+
     /**
-     * The double ended queue of event handlers that make up the chain.
+     * The empty snapshot for chains without any handlers.
      */
-    private Deque<EventHandler<T>> handlerChain;
-    
+    private static final EventHandler[] EMPTY_HANDLERS = new EventHandler[0];
+
+    /**
+     * The snapshot of the event handlers that make up the chain.
+     */
+    private volatile EventHandler<T>[] handlers;
+
+    /**
+     * The context reused by each thread to dispatch events down this chain.
+     */
+    private ThreadLocal<EventHandlerChainContext<T>> localContext;
+
     /**
      * Constructs a new {@link EventHandlerChain};
      */
     public EventHandlerChain() {
-        handlerChain = new LinkedList<EventHandler<T>>();
+        handlers = EMPTY_HANDLERS;
+        localContext = new ThreadLocal<EventHandlerChainContext<T>>() {
+
+            @Override
+            protected EventHandlerChainContext<T> initialValue() {
+                return new EventHandlerChainContext<T>(null, null);
+            }
+        };
     }
-    
+
     /**
      * Adds an event handler to the front of the handler chain.
      * 
      * @param handler   The handler to add to the chain.
      */
-    public void addToFront(EventHandler<T> handler) {
-        handlerChain.addFirst(handler);
+    public synchronized void addToFront(EventHandler<T> handler) {
+        EventHandler<T>[] current = handlers;
+        EventHandler<T>[] updated = new EventHandler[current.length + 1];
+        System.arraycopy(current, 0, updated, 1, current.length);
+        updated[0] = handler;
+        handlers = updated;
     }
     
     /**
@@ -57,8 +80,12 @@ public final class EventHandlerChain<T extends Event> {
      * 
      * @param handler   The handler to add to the chain.
      */
-    public void addToBack(EventHandler<T> handler) {
-        handlerChain.addLast(handler);
+    public synchronized void addToBack(EventHandler<T> handler) {
+        EventHandler<T>[] current = handlers;
+        EventHandler<T>[] updated = new EventHandler[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = handler;
+        handlers = updated;
     }
     
     /**
@@ -66,8 +93,27 @@ public final class EventHandlerChain<T extends Event> {
      * 
      * @param handler   The event handler to remove.
      */
-    public void remove(EventHandler<T> handler) {
-        handlerChain.remove(handler);
+    public synchronized void remove(EventHandler<T> handler) {
+        EventHandler<T>[] current = handlers;
+        for(int i = 0; i < current.length; i++) {
+            if(current[i].equals(handler)) {
+                EventHandler<T>[] updated = new EventHandler[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                handlers = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the current snapshot of the event handlers in this chain. The returned
+     * array must not be modified.
+     *
+     * @return  The event handlers.
+     */
+    public EventHandler<T>[] getHandlers() {
+        return handlers;
     }
     
     /**
@@ -77,6 +123,42 @@ public final class EventHandlerChain<T extends Event> {
      * @return          The created {@link EventHandlerChainContext}.
      */
     public EventHandlerChainContext<T> createNewEventHandlerChainContext(T event) {
-        return new EventHandlerChainContext<T>(event, handlerChain.iterator());
+        return new EventHandlerChainContext<T>(event, handlers);
+    }
+
+    /**
+     * Resets a previously created {@link EventHandlerChainContext} so that it
+     * propagates an event down this chain.
+     *
+     * @param context   The context to reset.
+     * @param event     The event to propagate.
+     */
+    public void resetEventHandlerChainContext(EventHandlerChainContext<T> context, T event) {
+        context.reset(event, handlers);
+    }
+
+    /**
+     * Propagates an event down this chain on the calling thread. The context is reused by
+     * each dispatch on the same thread, so handlers must not keep a reference to it once
+     * they have returned.
+     *
+     * @param event The event to propagate.
+     */
+    public void dispatch(T event) {
+        EventHandlerChainContext<T> context = localContext.get();
+
+        /* Create a new context if a handler is dispatching down this chain again */
+        if(context.isActive()) {
+            context = new EventHandlerChainContext<T>(null, null);
+        }
+
+        context.reset(event, handlers);
+        context.setActive(true);
+        try {
+            context.doAll();
+        } finally {
+            context.setActive(false);
+            context.reset(null, null);
+        }
     }
 }
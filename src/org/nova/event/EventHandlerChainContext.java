@@ -22,8 +22,6 @@
 
 package org.nova.event;
 
-import java.util.Iterator;
-
 /**
  * Evelus Development
  * Created by Hadyn Richard
@@ -35,34 +33,76 @@ public final class EventHandlerChainContext<T extends Event> {
     /**
      * The event to propagate down the event handler chain.
      */
-    private final T event;
+    private T event;
     
     /**
-     * The event handler iterator.
+     * The snapshot of the event handlers to propagate the event down.
+     */
+    private EventHandler<T>[] handlers;
+
+    /**
+     * The index of the next handler to process.
      */
-    private final Iterator<EventHandler<T>> iterator;
+    private int index;
     
     /**
      * Flag for if handler has been requested to stop.
      */
     private boolean stopped;
+
+    /**
+     * Flag for if the context is being used by a chain to dispatch an event.
+     */
+    private boolean active;
     
     /**
      * Constructs a new {@link EventHandlerChainContext};
      * 
      * @param event     The event to decorate in this context.
-     * @param iterator  The event handler iterator.
+     * @param handlers  The event handlers to propagate the event down.
      */
-    public EventHandlerChainContext(T event, Iterator<EventHandler<T>> iterator) {
+    public EventHandlerChainContext(T event, EventHandler<T>[] handlers) {
         this.event = event;
-        this.iterator = iterator;
+        this.handlers = handlers;
     }
     
+    /**
+     * Resets this context so that it can be reused to propagate another event.
+     *
+     * @param event     The event to decorate in this context.
+     * @param handlers  The event handlers to propagate the event down.
+     */
+    void reset(T event, EventHandler<T>[] handlers) {
+        this.event = event;
+        this.handlers = handlers;
+
+        index = 0;
+        stopped = false;
+    }
+
+    /**
+     * Sets if the context is being used by a chain to dispatch an event.
+     *
+     * @param active    If the context is active.
+     */
+    void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * Gets if the context is being used by a chain to dispatch an event.
+     *
+     * @return  If the context is active.
+     */
+    boolean isActive() {
+        return active;
+    }
+
     /**
      * Checks to see if the state of this context is valid.
      */
     private void checkState() {
-        if(!iterator.hasNext() && stopped) {
+        if(index >= handlers.length || stopped) {
             throw new IllegalStateException();
         }   
     }
@@ -77,41 +117,44 @@ public final class EventHandlerChainContext<T extends Event> {
     /**
      * Processes the next handler for the event.
      * 
-     * @throws IllegalStateException    If the iterator does not have another
-     *                                  handler to process, or if the context
-     *                                  has been to requested to stop processing
-     *                                  handlers.
+     * @throws IllegalStateException    If there is not another handler to
+     *                                  process, or if the context has been
+     *                                  requested to stop processing handlers.
      */
     public void doNext() {
         checkState();
         
-        EventHandler<T> handler = iterator.next();
+        EventHandler<T> handler = handlers[index++];
         handler.handle(event, this);
     }
     
     /**
-     * Processes the remaining handlers for the event.
-     * 
-     * @throws IllegalStateException    If the iterator does not have another
-     *                                  handler to process, or if the context
-     *                                  has been to requested to stop processing
-     *                                  handlers.
+     * Processes the remaining handlers for the event, stopping early if a handler
+     * requests the context to stop processing handlers.
      */
     public void doAll() {
-        checkState();
-        
-        while(iterator.hasNext() && !stopped) {
-            EventHandler<T> handler = iterator.next();
+        EventHandler<T>[] handlers = this.handlers;
+        while(index < handlers.length && !stopped) {
+            EventHandler<T> handler = handlers[index++];
             handler.handle(event, this);
         }
     }
     
+    /**
+     * Gets the event being propagated by this context.
+     *
+     * @return  The event.
+     */
+    public T getEvent() {
+        return event;
+    }
+
     /**
      * Gets if the event is finished propagating down the event handler chain.
      * 
      * @return  If the event has finished propegating.
      */
     public boolean isFinished() {
-        return !iterator.hasNext() || stopped;
+        return index >= handlers.length || stopped;
     }
-}
\ No newline at end of file
+}
@@ -24,6 +24,8 @@ package org.nova.io;
 
 import org.nova.Configuration;
 import org.nova.ServerMode;
+import org.nova.core.ServiceType;
+import org.nova.net.IoMode;
 import org.nova.util.script.Script;
 import org.nova.util.xml.XMLNode;
 import org.nova.util.xml.XMLParser;
@@ -153,6 +155,72 @@ public final class ConfigurationParser {
                         target.setBasePort(basePort);
                     }
                 }
+
+                if(node.getName().equals("tickperiod")) {
+
+                    /* Parse and set the target configuration tick periods */
+                    long tickPeriod = Long.parseLong(node.getValue());
+                    if(tickPeriod <= 0L) {
+                        throw new IOException("invalid tick period");
+                    }
+
+                    for(Configuration target : targets) {
+                        target.setTickPeriod(tickPeriod);
+                    }
+                }
+
+                if(node.getName().equals("generatecodecs")) {
+
+                    /* Parse and set if the target configurations generate programs for the packet codecs */
+                    boolean generateCodecs = Boolean.parseBoolean(node.getValue());
+                    for(Configuration target : targets) {
+                        target.setGenerateCodecs(generateCodecs);
+                    }
+                }
+
+                if(node.getName().equals("idlelimit")) {
+
+                    /* Check if the idle limit node is valid */
+                    if(!node.containsChild("service") || !node.containsChild("limit")) {
+                        throw new IOException("invalid idlelimit node");
+                    }
+
+                    /* Parse and set the idle limit for the clients of the service type */
+                    ServiceType serviceType;
+                    long idleLimit;
+                    try {
+                        serviceType = ServiceType.valueOf(node.getFirstChild("service").getValue().toUpperCase());
+                        idleLimit = Long.parseLong(node.getFirstChild("limit").getValue());
+                    } catch(IllegalArgumentException ex) {
+                        throw new IOException("invalid idlelimit node");
+                    }
+
+                    for(Configuration target : targets) {
+                        target.setIdleLimit(serviceType, idleLimit);
+                    }
+                }
+
+                if(node.getName().equals("iomode")) {
+
+                    /* Check if the io mode node is valid */
+                    if(!node.containsChild("service") || !node.containsChild("mode")) {
+                        throw new IOException("invalid iomode node");
+                    }
+
+                    /* Parse and set the mode to serve the connections for the service type with */
+                    ServiceType serviceType;
+                    IoMode ioMode;
+                    try {
+                        serviceType = ServiceType.valueOf(node.getFirstChild("service").getValue().toUpperCase());
+                        ioMode = IoMode.valueOf(node.getFirstChild("mode").getValue().toUpperCase());
+                    } catch(IllegalArgumentException ex) {
+                        throw new IOException("invalid iomode node");
+                    }
+
+                    for(Configuration target : targets) {
+                        target.setIoMode(serviceType, ioMode);
+                    }
+                }
             }
         }
 
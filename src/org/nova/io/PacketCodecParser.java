@@ -67,7 +67,7 @@ public abstract class PacketCodecParser {
     protected void parseBlockData(XMLNode node, PacketCodecData data) throws IOException {
 
         /* Check if the blocks node exists */
-        if(!node.containsChild("blocks")) {
+        if(node.containsChild("blocks")) {
 
             /* Get the blocks node */
             XMLNode blocksNode = node.getFirstChild("blocks");
@@ -78,18 +78,18 @@ public abstract class PacketCodecParser {
             for(XMLNode block : blockNodes) {
 
                 /* Check if the name is declared */
-                if(!node.containsChild("name")) {
+                if(!block.containsChild("name")) {
                     throw new IOException("name not declared for numeric block");
                 }
 
                 /* Get the name of the block */
-                String name = node.getFirstChild("name").getValue();
+                String name = block.getFirstChild("name").getValue();
 
                 /* Check if there is a declared numeric transformer */
-                if(node.containsChild("numerictransformer")) {
+                if(block.containsChild("numerictransformer")) {
 
                     /* Get the numeric transformer node */
-                    XMLNode transformerNode = node.getFirstChild("numerictransformer");
+                    XMLNode transformerNode = block.getFirstChild("numerictransformer");
 
                     /* Check if the numeric transformer node is valid */
                     if(!transformerNode.containsChild("order") && !transformerNode.containsChild("translation")) {
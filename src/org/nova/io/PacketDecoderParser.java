@@ -92,6 +92,11 @@ public final class PacketDecoderParser<T extends PacketCodecData> extends Packet
             /* Create the meta data */
             PacketDecoderData data = new PacketDecoderData(id, packetName);
 
+            /* Parse if the decoder decodes packets as views, by default the values are copied */
+            if(node.containsChild("flyweight")) {
+                data.setFlyweight(Boolean.parseBoolean(node.getFirstChild("flyweight").getValue()));
+            }
+
             /* Parse the block data */
             parseBlockData(node, data);
 
@@ -149,6 +149,13 @@ public final class PacketParser {
                 metaData.addVariable(packetVariable);
             }
 
+            /* Compile the layout for the packet, checking for variable name collisions */
+            try {
+                metaData.compile();
+            } catch(IllegalArgumentException ex) {
+                throw new IOException(ex.getMessage());
+            }
+
             /* Add the meta data to the map */
             data.put(name, metaData);
         }
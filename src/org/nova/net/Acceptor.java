@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Accepts socket channels on a dedicated thread and hands each of them off to a
+ * reactor from a {@link ReactorGroup}.
+ */
+public final class Acceptor implements Runnable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(Acceptor.class.getName());
+
+    /**
+     * The selector used to wait for incoming connections.
+     */
+    private Selector selector;
+
+    /**
+     * The reactor group to hand the accepted channels off to.
+     */
+    private ReactorGroup group;
+
+    /**
+     * The flag for if the acceptor is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructs a new {@link Acceptor};
+     *
+     * @param group The reactor group to hand accepted channels off to.
+     */
+    public Acceptor(ReactorGroup group) throws IOException {
+        selector = Selector.open();
+
+        this.group = group;
+    }
+
+    /**
+     * Binds a server socket channel to an address and registers it to accept
+     * connections. Addresses should be bound before the acceptor is started.
+     *
+     * @param address   The address to bind to.
+     */
+    public void bind(SocketAddress address) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void run() {
+        running = true;
+
+        while(running) {
+            try {
+                selector.select();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()) {
+
+                    /* Get and remove the next selection key */
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    if(!key.isValid() || !key.isAcceptable()) {
+                        continue;
+                    }
+
+                    /* Accept every pending connection for the server channel */
+                    ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+                    SocketChannel socketChannel;
+                    while((socketChannel = serverChannel.accept()) != null) {
+                        socketChannel.configureBlocking(false);
+
+                        /* Hand the channel off to the next reactor */
+                        group.next().register(socketChannel);
+                    }
+                }
+            } catch(IOException ex) {
+                logger.log(Level.WARNING, "Exception while accepting connections", ex);
+            }
+        }
+
+        /* Close each of the server channels */
+        for(SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch(IOException ex) {
+                logger.log(Level.WARNING, "Exception while closing server channel", ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the acceptor and closes each of the bound server channels.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.core.ServiceManager;
+import org.nova.core.ServiceType;
+import org.nova.net.buffer.BufferArena;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Accepts socket channels on a dedicated thread and serves each of them with its own
+ * thread, which does blocking reads into the input buffer of the client.
+ *
+ * Notes:
+ *
+ *          Connection threads are virtual threads when the runtime supports them and platform daemon
+ *          threads otherwise. The virtual thread factory is looked up reflectively so that this class
+ *          also runs on runtimes from before virtual threads were added.
+ *
+ *          The bytes read by a connection thread are decoded and dispatched by a {@link ClientInputHandler},
+ *          the same as the bytes read by a reactor. A connection thread holds on to the input buffer of its
+ *          client for as long as it is waiting for bytes to be read.
+ *
+ *          When accepting a connection fails, such as when the process has run out of file descriptors, the
+ *          acceptor waits before accepting again and doubles the wait for each failure in a row, up to a limit.
+ *          This stops the acceptor from spinning and flooding the log while the failure lasts. The acceptor
+ *          stops once its server channel has been closed.
+ */
+public final class BlockingAcceptor implements Runnable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(BlockingAcceptor.class.getName());
+
+    /**
+     * The time in milliseconds to wait after the first failure to accept a connection.
+     */
+    private static final long MINIMUM_BACKOFF = 10L;
+
+    /**
+     * The maximum time in milliseconds to wait after a failure to accept a connection.
+     */
+    private static final long MAXIMUM_BACKOFF = 1000L;
+
+    /**
+     * The server socket channel to accept connections from.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * The packet handler for the accepted clients.
+     */
+    private PacketHandler packetHandler;
+
+    /**
+     * The message handler for the accepted clients.
+     */
+    private MessageHandler messageHandler;
+
+    /**
+     * The arena to borrow the client buffers from, or null to allocate the buffers.
+     */
+    private BufferArena arena;
+
+    /**
+     * The service type that the accepted clients are handled by.
+     */
+    private ServiceType serviceType;
+
+    /**
+     * The client pool to add the accepted clients to, or null to not pool the clients.
+     */
+    private ClientPool clientPool;
+
+    /**
+     * The input handler to decode and dispatch the read bytes with.
+     */
+    private ClientInputHandler inputHandler;
+
+    /**
+     * The factory to create the connection threads with.
+     */
+    private ThreadFactory threadFactory;
+
+    /**
+     * The flag for if the acceptor is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructs a new {@link BlockingAcceptor};
+     *
+     * @param packetHandler     The packet handler for the accepted clients.
+     * @param messageHandler    The message handler for the accepted clients.
+     * @param arena             The arena to borrow the client buffers from, or null to allocate the buffers.
+     * @param serviceManager    The service manager to dispatch the decoded messages with.
+     * @param serviceType       The service type that the accepted clients are handled by.
+     */
+    public BlockingAcceptor(PacketHandler packetHandler, MessageHandler messageHandler, BufferArena arena,
+                            ServiceManager serviceManager, ServiceType serviceType) {
+        this.packetHandler = packetHandler;
+        this.messageHandler = messageHandler;
+        this.arena = arena;
+        this.serviceType = serviceType;
+
+        inputHandler = new ClientInputHandler(serviceManager);
+        threadFactory = createThreadFactory();
+    }
+
+    /**
+     * Creates the factory for the connection threads, which creates virtual threads if they
+     * are supported and platform daemon threads otherwise.
+     *
+     * @return  The created thread factory.
+     */
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch(Exception ex) {
+            /* Virtual threads are not supported, fall back to platform threads */
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "connection-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Sets the client pool to add the accepted clients to, so that they can be found by their index and
+     * swept for being idle. Connections are refused while the pool is full. This should be set before
+     * the acceptor is started.
+     *
+     * @param clientPool    The client pool, or null to not pool the clients.
+     */
+    public void setClientPool(ClientPool clientPool) {
+        this.clientPool = clientPool;
+    }
+
+    /**
+     * Binds the server socket channel to an address. The address should be bound
+     * before the acceptor is started.
+     *
+     * @param address   The address to bind to.
+     */
+    public void bind(SocketAddress address) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(address);
+    }
+
+    @Override
+    public void run() {
+        running = true;
+
+        long backoff = 0L;
+        while(running) {
+            try {
+                SocketChannel socketChannel = serverChannel.accept();
+                backoff = 0L;
+
+                /* Create the client and start its connection thread */
+                Client client = new Client(socketChannel, packetHandler, messageHandler, arena);
+                client.setServiceType(serviceType);
+
+                /* Refuse the connection if the client pool is full */
+                if(clientPool != null && !clientPool.add(client)) {
+                    client.disconnect();
+                    continue;
+                }
+
+                threadFactory.newThread(new Connection(client)).start();
+            } catch(ClosedChannelException ex) {
+
+                /* The server channel has been closed, stop accepting */
+                break;
+            } catch(IOException ex) {
+                if(!running || !serverChannel.isOpen()) {
+                    break;
+                }
+
+                logger.log(Level.WARNING, "Exception while accepting connections", ex);
+
+                /* Wait before accepting again, waiting longer for each failure in a row */
+                backoff = backoff == 0L ? MINIMUM_BACKOFF : Math.min(backoff * 2L, MAXIMUM_BACKOFF);
+                try {
+                    Thread.sleep(backoff);
+                } catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the acceptor and closes the server channel.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch(IOException ex) {
+            logger.log(Level.WARNING, "Exception while closing server channel", ex);
+        }
+    }
+
+    /**
+     * The inline class for a connection thread, which reads from the channel of its client
+     * until the client disconnects.
+     */
+    private final class Connection implements Runnable {
+
+        /**
+         * The client for this connection.
+         */
+        private Client client;
+
+        /**
+         * Constructs a new {@link Connection};
+         *
+         * @param client    The client for this connection.
+         */
+        public Connection(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            SocketChannel channel = client.getChannel();
+            for(;;) {
+
+                /* Acquire the input buffer, this may borrow a buffer from the arena */
+                ByteBuffer inputBuffer = client.acquireInputBuffer();
+                if(inputBuffer == null) {
+                    return;
+                }
+
+                try {
+
+                    /* Disconnect the client if the end of the stream has been reached */
+                    int read = channel.read(inputBuffer);
+                    if(read < 0) {
+                        client.disconnect();
+                        return;
+                    }
+
+                    if(read > 0) {
+                        client.setLastReadTime(System.nanoTime());
+                    }
+
+                    /* Decode and dispatch the read bytes */
+                    inputHandler.handleInput(client, inputBuffer);
+                } catch(IOException ex) {
+
+                    /* Disconnect the client */
+                    client.disconnect();
+                    return;
+                } catch(RuntimeException ex) {
+                    logger.log(Level.WARNING, "Exception while handling client input", ex);
+                    client.disconnect();
+                    return;
+                } finally {
+
+                    /* Release the input buffer, which gives it back to the arena if it is empty */
+                    client.releaseInputBuffer();
+                }
+            }
+        }
+    }
+}
@@ -23,31 +23,79 @@
 package org.nova.net;
 
 import org.nova.core.ServiceType;
+import org.nova.net.buffer.BufferArena;
+import org.nova.net.buffer.OutputQueue;
 import org.nova.net.packet.Packet;
 import org.nova.net.packet.codec.PacketDecoderState;
+import org.nova.net.packet.codec.PacketEncoder;
 import org.nova.net.packet.codec.PacketEncoderState;
 import org.nova.net.packet.codec.PacketDecoderState.Stage;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectableChannel;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          When the client borrows its buffers from an arena, the input buffer is given back whenever it
+ *          holds no partial packet and each output segment is given back once it has been flushed.
+ *          Both are borrowed again the next time they are needed.
  */
 public final class Client {
 
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(Client.class.getName());
+
+    /**
+     * The flag set in the pending interest ops when the client has been queued on its reactor.
+     */
+    private static final int INTEREST_QUEUED = 1 << 16;
+
+    /**
+     * The size of the buffers for clients that do not borrow their buffers from an arena.
+     */
+    private static final int BUFFER_SIZE = 5000;
+
     /**
      * The selection key for the client.
      */
     private SelectionKey selectionKey;
 
+    /**
+     * The socket channel for the client.
+     */
+    private SocketChannel channel;
+
+    /**
+     * The index of the slot the client is stored in, or -1 if the client is not stored in a pool.
+     */
+    private int index = -1;
+
+    /**
+     * The reactor which the selection key is registered to, or null if interest ops are
+     * changed directly on the selection key.
+     */
+    private Reactor reactor;
+
+    /**
+     * The interest ops waiting to be applied by the reactor, with the ops to add in the
+     * first byte and the ops to remove in the second byte.
+     */
+    private AtomicInteger pendingInterestOps;
+
     /**
      * The packet handler for the client.
      */
@@ -58,15 +106,51 @@ public final class Client {
      */
     private MessageHandler messageHandler;
 
+    /**
+     * The arena to borrow buffers from, or null if the client allocates its own buffers.
+     */
+    private BufferArena arena;
+
     /**
      * The input buffer for the client.
      */
     private ByteBuffer inputBuffer;
 
     /**
-     * The output buffer for the client.
+     * The queue of output for the client.
      */
-    private ByteBuffer outputBuffer;
+    private OutputQueue outputQueue;
+
+    /**
+     * The flusher which flushes the output of the client at the end of each tick, or
+     * null if output is flushed as soon as it is written.
+     */
+    private ClientFlusher flusher;
+
+    /**
+     * The flag for if the client is waiting to be flushed by the flusher.
+     */
+    private AtomicBoolean dirty;
+
+    /**
+     * The flag for if the input buffer is being read from.
+     */
+    private boolean reading;
+
+    /**
+     * The flag for if the client has been disconnected.
+     */
+    private volatile boolean disconnected;
+
+    /**
+     * The time in nanoseconds that bytes were last read from the client.
+     */
+    private volatile long lastReadTime;
+
+    /**
+     * The time in nanoseconds that bytes were last written to the client.
+     */
+    private volatile long lastWriteTime;
 
     /**
      * The packet decoder state for this client.
@@ -78,6 +162,11 @@ public final class Client {
      */
     private PacketEncoderState encoderState;
 
+    /**
+     * The writer to encode packets directly into the output queue with.
+     */
+    private PacketSegmentWriter packetWriter;
+
     /**
      * The service type for this client.
      */
@@ -96,17 +185,70 @@ public final class Client {
      * @param messageHandler    The message handler for this client.
      */
     public Client(SelectionKey selectionKey, PacketHandler packetHandler, MessageHandler messageHandler) {
+        this(selectionKey, packetHandler, messageHandler, null);
+    }
+
+    /**
+     * Constructs a new {@link Client};
+     *
+     * @param selectionKey      The selection key for this client.
+     * @param packetHandler     The packet handler for this client.
+     * @param messageHandler    The message handler for this client.
+     * @param arena             The arena to borrow buffers from, or null to allocate the buffers.
+     */
+    public Client(SelectionKey selectionKey, PacketHandler packetHandler, MessageHandler messageHandler, BufferArena arena) {
+        this(selectionKey, (SocketChannel) selectionKey.channel(), packetHandler, messageHandler, arena);
+    }
+
+    /**
+     * Constructs a new {@link Client} for a blocking socket channel which is not registered to a
+     * selector. Queued output is written on the thread which requested it to be written.
+     *
+     * @param channel           The socket channel for this client.
+     * @param packetHandler     The packet handler for this client.
+     * @param messageHandler    The message handler for this client.
+     * @param arena             The arena to borrow buffers from, or null to allocate the buffers.
+     */
+    public Client(SocketChannel channel, PacketHandler packetHandler, MessageHandler messageHandler, BufferArena arena) {
+        this(null, channel, packetHandler, messageHandler, arena);
+    }
+
+    /**
+     * Constructs a new {@link Client};
+     *
+     * @param selectionKey      The selection key for this client, or null if the channel is blocking.
+     * @param channel           The socket channel for this client.
+     * @param packetHandler     The packet handler for this client.
+     * @param messageHandler    The message handler for this client.
+     * @param arena             The arena to borrow buffers from, or null to allocate the buffers.
+     */
+    private Client(SelectionKey selectionKey, SocketChannel channel, PacketHandler packetHandler, MessageHandler messageHandler, BufferArena arena) {
         decoderState = new PacketDecoderState();
-        inputBuffer = ByteBuffer.allocate(5000);
-        outputBuffer = ByteBuffer.allocate(5000);
+        encoderState = new PacketEncoderState();
+        packetWriter = new PacketSegmentWriter();
+        disconnectListeners = new LinkedList<DisconnectListener>();
+        dirty = new AtomicBoolean();
+        lastReadTime = lastWriteTime = System.nanoTime();
+        pendingInterestOps = new AtomicInteger();
+
+        /* Borrow the buffers from the arena if one was provided */
+        if(arena != null) {
+            inputBuffer = arena.allocate(0);
+            outputQueue = new OutputQueue(arena, OutputQueue.DEFAULT_SEGMENT_SIZE);
+        } else {
+            inputBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            outputQueue = new OutputQueue(null, BUFFER_SIZE);
+        }
 
         /* Initialize the decoder state */
         decoderState.setBuffer(inputBuffer);
         decoderState.setStage(Stage.AWAITING_ID);
 
         this.selectionKey = selectionKey;
+        this.channel = channel;
         this.packetHandler = packetHandler;
         this.messageHandler = messageHandler;
+        this.arena = arena;
     }
 
     /**
@@ -146,23 +288,93 @@ public final class Client {
     }
 
     /**
-     * Gets the output buffer for this client.
+     * Gets the output queue for this client.
      *
-     * @return  The output buffer.
+     * @return  The output queue.
      */
-    public ByteBuffer getOutputBuffer() {
-        return outputBuffer;
+    public OutputQueue getOutputQueue() {
+        return outputQueue;
     }
 
     /**
      * Gets the input buffer for this client.
      *
-     * @return  The input buffer.
+     * @return  The input buffer, or null if it has been given back to the arena.
      */
     public ByteBuffer getInputBuffer() {
         return inputBuffer;
     }
 
+    /**
+     * Acquires the input buffer to read into, borrowing a buffer from the arena if the
+     * previous one was given back. Each call must be followed by a call to
+     * {@link #releaseInputBuffer()} once reading has finished.
+     *
+     * @return  The input buffer, or null if the client has been disconnected.
+     */
+    public synchronized ByteBuffer acquireInputBuffer() {
+
+        /* Check if the client has been disconnected */
+        if(disconnected) {
+            return null;
+        }
+
+        if(inputBuffer == null) {
+            inputBuffer = arena.allocate(0);
+            decoderState.setBuffer(inputBuffer);
+        }
+
+        reading = true;
+        return inputBuffer;
+    }
+
+    /**
+     * Replaces the input buffer with a buffer from the next size class up, keeping the
+     * bytes that have been read so far. Only called while the input buffer is acquired.
+     *
+     * @return  If the input buffer was grown.
+     */
+    public synchronized boolean growInputBuffer() {
+
+        /* Buffers which were not borrowed from an arena cannot grow */
+        if(arena == null) {
+            return false;
+        }
+
+        int capacity = arena.getNextCapacity(inputBuffer.capacity());
+        if(capacity == inputBuffer.capacity()) {
+            return false;
+        }
+
+        /* Copy the read bytes to the larger buffer and give back the old buffer */
+        ByteBuffer buffer = arena.allocate(capacity);
+        inputBuffer.flip();
+        buffer.put(inputBuffer);
+        arena.release(inputBuffer);
+
+        inputBuffer = buffer;
+        decoderState.setBuffer(buffer);
+        return true;
+    }
+
+    /**
+     * Releases the input buffer once reading has finished. The buffer is given back to the arena
+     * if it does not hold part of a packet or if the client was disconnected while reading.
+     */
+    public synchronized void releaseInputBuffer() {
+        reading = false;
+
+        if(arena == null || inputBuffer == null) {
+            return;
+        }
+
+        if(disconnected || inputBuffer.position() == 0 && decoderState.getStage() == Stage.AWAITING_ID) {
+            arena.release(inputBuffer);
+            inputBuffer = null;
+            decoderState.setBuffer(null);
+        }
+    }
+
     /**
      * Sets the service type for this client.
      *
@@ -181,6 +393,134 @@ public final class Client {
         return serviceType;
     }
 
+    /**
+     * Sets the index of the slot which the client is stored in.
+     *
+     * @param index The slot index.
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the index of the slot which the client is stored in. The index is stable for as long
+     * as the client is connected and is reused by another client once it has disconnected.
+     *
+     * @return  The slot index or -1 if the client is not stored in a pool.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the selection key for this client.
+     *
+     * @return  The selection key.
+     */
+    public SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    /**
+     * Gets the socket channel for this client.
+     *
+     * @return  The socket channel.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sets the reactor which the selection key of this client is registered to. Once set,
+     * interest op changes are applied by the reactor thread.
+     *
+     * @param reactor   The reactor.
+     */
+    public void setReactor(Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    /**
+     * Requests a change to the interest ops of the selection key for this client. This
+     * method may be called from any thread.
+     *
+     * @param add       The interest ops to add.
+     * @param remove    The interest ops to remove.
+     */
+    public void updateInterestOps(int add, int remove) {
+
+        /* Blocking channels do not have any interest ops */
+        if(selectionKey == null) {
+            return;
+        }
+
+        /* Change the interest ops directly if there is no reactor to apply them */
+        Reactor reactor = this.reactor;
+        if(reactor == null) {
+            try {
+                selectionKey.interestOps((selectionKey.interestOps() | add) & ~remove);
+            } catch(CancelledKeyException ex) {
+                /* The client has been disconnected */
+            }
+            return;
+        }
+
+        /* Merge the change with the pending changes, the latest request for an op wins */
+        for(;;) {
+            int current = pendingInterestOps.get();
+            int pendingAdd = (current & 0xFF | add) & ~remove;
+            int pendingRemove = (current >> 8 & 0xFF | remove) & ~add;
+
+            if(pendingInterestOps.compareAndSet(current, INTEREST_QUEUED | pendingRemove << 8 | pendingAdd)) {
+
+                /* Queue the client on the reactor if it has not already been queued */
+                if((current & INTEREST_QUEUED) == 0) {
+                    reactor.submitInterestChange(this);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies the pending interest op changes to the selection key, called from the reactor thread.
+     */
+    void applyInterestOps() {
+        int changes = pendingInterestOps.getAndSet(0);
+        int add = changes & 0xFF;
+        int remove = changes >> 8 & 0xFF;
+
+        /* Keep the write interest if output was queued after the request to remove it */
+        if((remove & SelectionKey.OP_WRITE) != 0 && outputQueue.size() > 0) {
+            remove &= ~SelectionKey.OP_WRITE;
+        }
+
+        try {
+            if(selectionKey.isValid()) {
+                selectionKey.interestOps((selectionKey.interestOps() | add) & ~remove);
+            }
+        } catch(CancelledKeyException ex) {
+            /* The client has been disconnected */
+        }
+    }
+
+    /**
+     * Sets the flusher for this client. When a flusher is set, written messages are buffered
+     * and flushed once at the end of the tick rather than as soon as they are written.
+     *
+     * @param flusher   The flusher, or null to flush messages as soon as they are written.
+     */
+    public void setFlusher(ClientFlusher flusher) {
+        this.flusher = flusher;
+    }
+
+    /**
+     * Clears the flag for if the client is waiting to be flushed.
+     */
+    void clearDirty() {
+        dirty.set(false);
+    }
+
     /**
      * Adds a disconnect listener to this client.
      *
@@ -200,32 +540,164 @@ public final class Client {
     }
 
     /**
-     * Writes a message to the client.
+     * Writes a message to the client. While the output of the client is congested only
+     * urgent messages are written, and if the output overflows the client is disconnected.
      *
      * @param message   The message to write.
+     * @return          If the message was queued to be written.
      */
-    public void writeMessage(Message message) {
+    public boolean writeMessage(Message message) {
+
+        /* Drop the message before encoding it if the output will not accept it */
+        boolean urgent = message.getPriority() == Message.Priority.URGENT;
+        if(!outputQueue.accepts(urgent)) {
+            return false;
+        }
 
         /* Encode the message into a packet and check if it was successfully encoded */
         Packet encodedPacket = messageHandler.encode(message);
         if(encodedPacket == null) {
-            return;
+            return false;
         }
-        
-        /* Set the encoder states packet */
-        encoderState.setPacket(encodedPacket);
 
-        /* Encode the packet into a buffer and check if it was successfully encoded */
-        ByteBuffer buffer = packetHandler.encode(encoderState);
-        if(buffer == null) {
+        /* Packets are encoded and queued in the same order, as the cipher is shared between them */
+        OutputQueue.Result result;
+        synchronized(encoderState) {
+
+            /* Check again now that no other packet can be queued, so that the cipher never skips a packet */
+            if(!outputQueue.accepts(urgent)) {
+                return false;
+            }
+
+            /* Get the encoder for the packet and check if it exists */
+            PacketEncoder encoder = packetHandler.getEncoder(encodedPacket.getName());
+            if(encoder == null) {
+                return false;
+            }
+
+            /* Set the encoder states packet */
+            encoderState.setPacket(encodedPacket);
+
+            /* Encode the packet directly into the output queue, the cipher is only advanced if it is queued */
+            packetWriter.reset(encoder, encoderState);
+            try {
+                result = outputQueue.offer(packetWriter, urgent);
+            } catch(IllegalStateException ex) {
+
+                /* The packet is too long for its header, drop it as the cipher was not advanced */
+                logger.log(Level.WARNING, "Dropped a packet which could not be encoded: " + encodedPacket.getName(), ex);
+                return false;
+            }
+        }
+
+        switch(result) {
+
+            case REFUSED:
+                return false;
+
+            case OVERFLOWED:
+
+                /* The client is not keeping up with its output, disconnect it */
+                disconnect();
+                return false;
+        }
+
+        /* Leave the output to be flushed at the end of the tick if the client has a flusher */
+        ClientFlusher flusher = this.flusher;
+        if(flusher != null) {
+            if(dirty.compareAndSet(false, true)) {
+                flusher.markDirty(this);
+            }
+            return true;
+        }
+
+        requestWriteInterest();
+        return true;
+    }
+
+    /**
+     * Marks the selection key of the client for write interest. Blocking channels are
+     * written to immediately instead.
+     */
+    void requestWriteInterest() {
+        if(selectionKey == null) {
+            try {
+                while(flush()) {
+                    /* Keep writing until the output queue is empty */
+                }
+            } catch(IOException ex) {
+                disconnect();
+            }
             return;
         }
 
-        /* Put the buffer into the output buffer  */
-        outputBuffer.put(buffer);
+        updateInterestOps(SelectionKey.OP_WRITE, 0);
+    }
+
+    /**
+     * Writes as much of the queued output to the socket channel as it will accept.
+     *
+     * @return  If there are still bytes waiting to be written.
+     */
+    public boolean flush() throws IOException {
+        int size = outputQueue.size();
+        boolean pending = outputQueue.flush(channel);
+        if(outputQueue.size() < size) {
+            lastWriteTime = System.nanoTime();
+        }
+        return pending;
+    }
+
+    /**
+     * Writes the queued output to the socket channel with a single gathering write.
+     *
+     * @param maxSegments   The maximum amount of output segments to write.
+     * @param maxBytes      The amount of bytes after which no more segments are added to the write.
+     * @return              If there are still bytes waiting to be written.
+     */
+    public boolean flush(int maxSegments, int maxBytes) throws IOException {
+        int size = outputQueue.size();
+        boolean pending = outputQueue.flush(channel, maxSegments, maxBytes);
+        if(outputQueue.size() < size) {
+            lastWriteTime = System.nanoTime();
+        }
+        return pending;
+    }
+
+    /**
+     * Sets the time that bytes were last read from the client.
+     *
+     * @param lastReadTime  The time in nanoseconds.
+     */
+    public void setLastReadTime(long lastReadTime) {
+        this.lastReadTime = lastReadTime;
+    }
+
+    /**
+     * Gets the time that bytes were last read from the client.
+     *
+     * @return  The time in nanoseconds, from {@link System#nanoTime()}.
+     */
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
 
-        /* Mark the selection key for write interest */
-        selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+    /**
+     * Gets the time that bytes were last written to the client.
+     *
+     * @return  The time in nanoseconds, from {@link System#nanoTime()}.
+     */
+    public long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    /**
+     * Gets if the client has been disconnected.
+     *
+     * @return  If the client is disconnected.
+     */
+    public boolean isDisconnected() {
+        return disconnected;
     }
 
     /**
@@ -233,16 +705,45 @@ public final class Client {
      */
     public void disconnect() {
 
+        /* Check if the client has already been disconnected */
+        synchronized(this) {
+            if(disconnected) {
+                return;
+            }
+            disconnected = true;
+        }
+
         /* Alert the listeners that the client is being disconnected */
         for(DisconnectListener listeners : disconnectListeners) {
             listeners.onDisconnect(this);
         }
 
         try {
-            SelectableChannel channel = selectionKey.channel();
             channel.close();
         } catch(Throwable t) {
             throw new RuntimeException(t); // This shouldn't happen but if it does let off a bit of a warning
+        } finally {
+            releaseBuffers();
+        }
+    }
+
+    /**
+     * Gives the buffers back to the arena once the client has been disconnected. The input
+     * buffer is given back when it is released if it is still being read from.
+     */
+    private void releaseBuffers() {
+        outputQueue.close();
+
+        if(arena == null) {
+            return;
+        }
+
+        synchronized(this) {
+            if(!reading && inputBuffer != null) {
+                arena.release(inputBuffer);
+                inputBuffer = null;
+                decoderState.setBuffer(null);
+            }
         }
     }
-}
\ No newline at end of file
+}
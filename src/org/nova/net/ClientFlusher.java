@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.net.buffer.OutputQueue;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Flushes the output of each client written to during a tick once the tick has ended.
+ *
+ * Notes:
+ *
+ *          Clients are only marked for write interest if their output could not be fully flushed,
+ *          in which case the write event handler finishes flushing them.
+ */
+public final class ClientFlusher {
+
+    /**
+     * The clients which have had output written to them since the last flush.
+     */
+    private Queue<Client> dirtyClients;
+
+    /**
+     * The maximum amount of output segments to write for each client.
+     */
+    private int maxSegments;
+
+    /**
+     * The amount of bytes after which no more output segments are written for a client.
+     */
+    private int maxBytes;
+
+    /**
+     * Constructs a new {@link ClientFlusher};
+     */
+    public ClientFlusher() {
+        this(OutputQueue.DEFAULT_MAX_FLUSH_SEGMENTS, OutputQueue.DEFAULT_MAX_FLUSH_BYTES);
+    }
+
+    /**
+     * Constructs a new {@link ClientFlusher};
+     *
+     * @param maxSegments   The maximum amount of output segments to write for each client.
+     * @param maxBytes      The amount of bytes after which no more output segments are written for a client.
+     */
+    public ClientFlusher(int maxSegments, int maxBytes) {
+        dirtyClients = new ConcurrentLinkedQueue<Client>();
+
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a client to be flushed. Clients should only be added once between each flush.
+     *
+     * @param client    The client to add.
+     */
+    void markDirty(Client client) {
+        dirtyClients.add(client);
+    }
+
+    /**
+     * Flushes each of the clients which have had output written to them since the last flush.
+     *
+     * @return  The amount of clients that were flushed.
+     */
+    public int flush() {
+        int count = 0;
+
+        Client client;
+        while((client = dirtyClients.poll()) != null) {
+
+            /* Clear the flag first so output written during the flush marks the client again */
+            client.clearDirty();
+
+            try {
+
+                /* Mark the client for write interest if its output could not be fully flushed */
+                if(client.flush(maxSegments, maxBytes)) {
+                    client.requestWriteInterest();
+                }
+            } catch(IOException ex) {
+
+                /* Something went wrong and we need to disconnect the client */
+                client.disconnect();
+            }
+
+            count++;
+        }
+
+        return count;
+    }
+}
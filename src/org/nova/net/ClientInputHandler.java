@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.core.Dispatcher;
+import org.nova.core.EventRingDispatcher;
+import org.nova.core.Service;
+import org.nova.core.ServiceManager;
+import org.nova.net.event.MessageDecodedEvent;
+import org.nova.net.packet.Packet;
+import org.nova.net.packet.codec.PacketDecoderState;
+import org.nova.net.packet.codec.PacketDecoderState.Stage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Decodes the bytes read into the input buffer of a client into messages, and dispatches the
+ *          messages to the service handling the client. This is shared by each of the ways that bytes
+ *          are read from a client, so that they all drive the same packet and message pipeline.
+ *
+ *          Services which are handed messages through an {@link EventRingDispatcher} must create the ring with
+ *          the factory of {@link MessageDecodedEvent}, as the messages are published by filling in its events.
+ */
+public final class ClientInputHandler {
+
+    /**
+     * The service manager to get the services handling the clients from.
+     */
+    private ServiceManager serviceManager;
+
+    /**
+     * Constructs a new {@link ClientInputHandler};
+     *
+     * @param serviceManager    The service manager to get the services handling the clients from.
+     */
+    public ClientInputHandler(ServiceManager serviceManager) {
+        this.serviceManager = serviceManager;
+    }
+
+    /**
+     * Handles the bytes which were read into the input buffer of a client.
+     *
+     * @param client        The client that the bytes were read from.
+     * @param inputBuffer   The input buffer acquired from the client.
+     */
+    public void handleInput(Client client, ByteBuffer inputBuffer) {
+
+        /* Flip the buffer to decode the read bytes */
+        inputBuffer.flip();
+
+        decodePackets(client);
+
+        /* Compact the bytes of the partial packet, if any, to the front of the buffer */
+        inputBuffer.compact();
+
+        /* Grow the buffer if a partial packet has filled it */
+        if(!inputBuffer.hasRemaining()) {
+            client.growInputBuffer();
+        }
+    }
+
+    /**
+     * Decodes each of the packets in the input buffer of a client and dispatches
+     * the decoded messages to the service handling the client.
+     *
+     * @param client    The client to decode the packets for.
+     */
+    @SuppressWarnings("unchecked")
+    private void decodePackets(Client client) {
+        for(;;) {
+
+            /* Check if the packet id needs to be determined */
+            PacketDecoderState state = client.getDecoderState();
+            if(state.getStage().equals(PacketDecoderState.Stage.AWAITING_ID)) {
+
+                /* Check if we can parse the packet id from the buffer */
+                ByteBuffer buffer = state.getBuffer();
+                if(buffer.remaining() < 1) {
+                    break;
+                }
+
+                int id = buffer.get() & 0xFF;
+
+                /* Check if the id needs to be deciphered */
+                if(state.useCipher()) {
+
+                    ISAACCipher cipher = state.getCipher();
+                    if(cipher == null) {
+                        throw new IllegalStateException("cipher cannot be null");
+                    }
+
+                    id = id - cipher.getNextValue() & 0xFF;
+                }
+
+                /* Set the id and that we are now awaiting bytes */
+                state.setDecoderId(id);
+                state.setStage(PacketDecoderState.Stage.AWAITING_BYTES);
+            }
+
+            /* Decode the packet and check if it successfully decoded */
+            Packet packet = client.getPacketHandler().decode(state);
+            if(packet == null) {
+                break;
+            }
+
+            /* Alert that we are now awaiting for an id again */
+            state.setStage(Stage.AWAITING_ID);
+
+            /* Decode the message from the provided packet */
+            Message decodedMessage = client.getMessageHandler().decode(packet);
+
+            /* Do not dispatch the message if it could not be decoded */
+            if(decodedMessage == null) {
+                continue;
+            }
+
+            /* Get the service that the client is currently being handled by */
+            Service service = serviceManager.get(client.getServiceType());
+
+            /* Publish the message to the ring of the service without allocating an event if it has one */
+            Dispatcher dispatcher = service.getDispatcher();
+            if(dispatcher instanceof EventRingDispatcher) {
+                EventRingDispatcher<MessageDecodedEvent> ring = (EventRingDispatcher<MessageDecodedEvent>) dispatcher;
+                ring.publish(MessageDecodedEvent.TRANSLATOR, client, decodedMessage);
+                continue;
+            }
+
+            /* Dispatch the message event */
+            dispatcher.handleEvent(new MessageDecodedEvent(client, decodedMessage));
+        }
+    }
+}
@@ -23,27 +23,54 @@
 package org.nova.net;
 
 import java.nio.channels.SelectionKey;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Created by Hadyn Richard
  *
  * Notes:
  *
- *          Is the SelectionKey the best thing to use?
+ *          Clients are stored in a fixed amount of slots. The index of the slot a client is stored in is
+ *          attached to its selection key so that looking up a client for an event is a single array load.
+ *          Slots are freed when their client disconnects and are reused by the clients created afterwards.
+ *
+ *          A client is stored to its slot before the index is attached to the selection key, and the
+ *          attachment is cleared before the slot is freed. Since the attachment of a selection key is
+ *          volatile, a thread which reads the index from a selection key will see the stored client.
+ *
+ *          Clients which are not registered to a selector, such as the clients served by their own thread, may
+ *          also be added to a slot. They do not have a selection key and can only be looked up by their index.
  */
 public final class ClientPool {
 
+    /**
+     * The default amount of clients that a pool can hold.
+     */
+    public static final int DEFAULT_CAPACITY = 2048;
+
     /**
      * The factory to create new clients with.
      */
     private ClientFactory factory;
 
     /**
-     * The map of clients.
+     * The client slots.
+     */
+    private Client[] clients;
+
+    /**
+     * The stack of the free slot indices.
+     */
+    private int[] freeIndices;
+
+    /**
+     * The amount of free slot indices on the stack.
+     */
+    private int freeCount;
+
+    /**
+     * The listener which frees the slot of a client when it disconnects.
      */
-    private Map<SelectionKey, Client> clients;
+    private DisconnectListener releaseListener;
 
     /**
      * Constructs a new {@link ClientPool};
@@ -51,7 +78,36 @@ public final class ClientPool {
      * @param factory   The client factory to create clients with.
      */
     public ClientPool(ClientFactory factory) {
-        clients = new HashMap<SelectionKey, Client>();
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new {@link ClientPool};
+     *
+     * @param factory   The client factory to create clients with.
+     * @param capacity  The maximum amount of clients that can be registered at once.
+     */
+    public ClientPool(ClientFactory factory, int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        clients = new Client[capacity];
+        freeIndices = new int[capacity];
+
+        /* Push the indices so that the lowest index is taken first */
+        for(int i = 0; i < capacity; i++) {
+            freeIndices[i] = capacity - i - 1;
+        }
+        freeCount = capacity;
+
+        releaseListener = new DisconnectListener() {
+
+            @Override
+            public void onDisconnect(Client client) {
+                release(client);
+            }
+        };
 
         this.factory = factory;
     }
@@ -60,17 +116,66 @@ public final class ClientPool {
      * Creates a client and registers to this client pool.
      *
      * @param key   The selection key to create the client with.
-     * @return      The created client.
+     * @return      The created client or null if there are no free slots.
      */
-    public Client create(SelectionKey key) {
+    public synchronized Client create(SelectionKey key) {
 
-        /* Create and register the client */
+        /* Check if there is a free slot for the client */
+        if(freeCount == 0) {
+            return null;
+        }
+
+        /* Create the client and store it to the slot before attaching the index to the key */
+        int index = freeIndices[--freeCount];
         Client createdClient = factory.create(key);
-        clients.put(key, createdClient);
+        createdClient.setIndex(index);
+        createdClient.addDisconnectListener(releaseListener);
+        clients[index] = createdClient;
+        key.attach(index);
 
         return createdClient;
     }
 
+    /**
+     * Adds a client which is not registered to a selector to this client pool.
+     *
+     * @param client    The client to add.
+     * @return          If the client was added, false if there are no free slots.
+     */
+    public synchronized boolean add(Client client) {
+
+        /* Check if there is a free slot for the client */
+        if(freeCount == 0) {
+            return false;
+        }
+
+        int index = freeIndices[--freeCount];
+        client.setIndex(index);
+        client.addDisconnectListener(releaseListener);
+        clients[index] = client;
+        return true;
+    }
+
+    /**
+     * Releases the slot of a client so that it may be reused.
+     *
+     * @param client    The client to release.
+     */
+    private synchronized void release(Client client) {
+        int index = client.getIndex();
+        if(index < 0 || clients[index] != client) {
+            return;
+        }
+
+        /* Detach the index from the key before freeing the slot */
+        SelectionKey key = client.getSelectionKey();
+        if(key != null) {
+            key.attach(null);
+        }
+        clients[index] = null;
+        freeIndices[freeCount++] = index;
+    }
+
     /**
      * Gets a client from its selection key.
      *
@@ -78,6 +183,48 @@ public final class ClientPool {
      * @return      The client for the selection key or null if client does not exist.
      */
     public Client getClient(SelectionKey key) {
-        return clients.get(key);
+        Object attachment = key.attachment();
+        if(!(attachment instanceof Integer)) {
+            return null;
+        }
+
+        /* A stale key may still hold the index of a slot which has since been given to another client */
+        Client client = clients[(Integer) attachment];
+        if(client == null || client.getSelectionKey() != key) {
+            return null;
+        }
+        return client;
+    }
+
+    /**
+     * Gets a client from its slot index.
+     *
+     * @param index The slot index of the client to get.
+     * @return      The client in the slot or null if the slot is free.
+     */
+    public Client getClient(int index) {
+        if(index < 0 || index >= clients.length) {
+            return null;
+        }
+
+        return clients[index];
+    }
+
+    /**
+     * Gets the amount of clients registered to this pool.
+     *
+     * @return  The amount of clients.
+     */
+    public synchronized int size() {
+        return clients.length - freeCount;
+    }
+
+    /**
+     * Gets the maximum amount of clients that can be registered to this pool.
+     *
+     * @return  The capacity.
+     */
+    public int getCapacity() {
+        return clients.length;
     }
 }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Counts the connections from each remote address and limits the amount of connections per address.
+ *
+ * Notes:
+ *
+ *          The counts are kept in an open addressed table with linear probing, using a key packed into a
+ *          long for each address, so tracking an address does not allocate. IPv4 addresses are stored
+ *          exactly, IPv6 addresses are folded into a hash and may share their count with another address.
+ *          Entries are removed by shifting the following entries of the probe sequence back, so lookups
+ *          never have to skip over removed entries.
+ *
+ *          The table has a fixed capacity, once it is three quarters full connections from addresses which
+ *          are not already in the table are refused.
+ */
+public final class ConnectionTable {
+
+    /**
+     * The key of an empty entry.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * The keys for each entry.
+     */
+    private long[] keys;
+
+    /**
+     * The connection counts for each entry.
+     */
+    private int[] counts;
+
+    /**
+     * The amount of entries in use.
+     */
+    private int size;
+
+    /**
+     * The maximum amount of entries in use.
+     */
+    private int threshold;
+
+    /**
+     * The maximum amount of connections for each address.
+     */
+    private int maximumPerAddress;
+
+    /**
+     * Constructs a new {@link ConnectionTable};
+     *
+     * @param capacity          The amount of addresses the table should be able to track, rounded up to a power of two.
+     * @param maximumPerAddress The maximum amount of connections for each address.
+     */
+    public ConnectionTable(int capacity, int maximumPerAddress) {
+        if(capacity <= 0 || maximumPerAddress <= 0) {
+            throw new IllegalArgumentException("capacity and maximum per address must be positive");
+        }
+
+        int length = Integer.highestOneBit(capacity * 4 / 3 + 1) << 1;
+        keys = new long[length];
+        counts = new int[length];
+        threshold = length * 3 / 4;
+
+        this.maximumPerAddress = maximumPerAddress;
+    }
+
+    /**
+     * Gets the key for an address.
+     *
+     * @param address   The address.
+     * @return          The key, which is never {@link #EMPTY}.
+     */
+    public static long getKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+
+        /* Store IPv4 addresses exactly, with a marker bit so that the key is never empty */
+        if(address instanceof Inet4Address) {
+            return 1L << 32 | (bytes[0] & 0xFFL) << 24 | (bytes[1] & 0xFFL) << 16 | (bytes[2] & 0xFFL) << 8 | bytes[3] & 0xFFL;
+        }
+
+        long hash = 0xCBF29CE484222325L;
+        for(byte value : bytes) {
+            hash = (hash ^ (value & 0xFF)) * 0x100000001B3L;
+        }
+        return hash | 1L << 63;
+    }
+
+    /**
+     * Gets the index of the first entry in the probe sequence for a key.
+     *
+     * @param key   The key.
+     * @return      The index.
+     */
+    private int indexFor(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & keys.length - 1;
+    }
+
+    /**
+     * Attempts to count a connection for an address.
+     *
+     * @param key   The key of the address.
+     * @return      If the connection was counted, or false if the address has the maximum amount of
+     *              connections or the table is full.
+     */
+    public synchronized boolean acquire(long key) {
+        int mask = keys.length - 1;
+        int index = indexFor(key);
+        while(keys[index] != EMPTY) {
+            if(keys[index] == key) {
+                if(counts[index] >= maximumPerAddress) {
+                    return false;
+                }
+                counts[index]++;
+                return true;
+            }
+            index = index + 1 & mask;
+        }
+
+        /* Refuse new addresses once the table is full */
+        if(size >= threshold) {
+            return false;
+        }
+
+        keys[index] = key;
+        counts[index] = 1;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a counted connection for an address.
+     *
+     * @param key   The key of the address.
+     */
+    public synchronized void release(long key) {
+        int mask = keys.length - 1;
+        int index = indexFor(key);
+        while(keys[index] != key) {
+            if(keys[index] == EMPTY) {
+                return;
+            }
+            index = index + 1 & mask;
+        }
+
+        if(--counts[index] > 0) {
+            return;
+        }
+
+        /* Remove the entry and shift back the following entries of the probe sequence */
+        size--;
+        int hole = index;
+        for(int next = hole + 1 & mask; keys[next] != EMPTY; next = next + 1 & mask) {
+            int home = indexFor(keys[next]);
+
+            /* Move the entry into the hole if the hole is between its home and where it is now */
+            if((next - home & mask) >= (next - hole & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        counts[hole] = 0;
+    }
+
+    /**
+     * Gets the amount of connections counted for an address.
+     *
+     * @param key   The key of the address.
+     * @return      The amount of connections.
+     */
+    public synchronized int getCount(long key) {
+        int mask = keys.length - 1;
+        for(int index = indexFor(key); keys[index] != EMPTY; index = index + 1 & mask) {
+            if(keys[index] == key) {
+                return counts[index];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the amount of addresses with connections.
+     *
+     * @return  The amount of addresses.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
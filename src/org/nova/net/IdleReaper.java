@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.core.ServiceType;
+import org.nova.task.Task;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Disconnects the clients of a pool which have been idle for longer than the limit for their service type.
+ *
+ * Notes:
+ *
+ *          The slots of the pool are split into buckets and each execution only sweeps a single bucket, so the
+ *          cost of each execution is the capacity of the pool divided by the amount of buckets. The reaper is
+ *          meant to be scheduled periodically on a timer wheel, in which case every client is checked once
+ *          every amount of buckets times the period.
+ *
+ *          A client is idle once nothing has been read from it for longer than the limit, or when it has output
+ *          waiting to be written and nothing has been written to it for longer than the limit. Service types
+ *          without a limit are never reaped.
+ */
+public final class IdleReaper extends Task {
+
+    /**
+     * The client pool to sweep.
+     */
+    private ClientPool clientPool;
+
+    /**
+     * The amount of buckets that the slots of the pool are split into.
+     */
+    private int buckets;
+
+    /**
+     * The next bucket to sweep.
+     */
+    private int bucket;
+
+    /**
+     * The idle limits in nanoseconds for each service type, indexed by the ordinal of the type.
+     */
+    private long[] idleLimits;
+
+    /**
+     * The amount of clients which have been disconnected.
+     */
+    private long reapedCount;
+
+    /**
+     * Constructs a new {@link IdleReaper};
+     *
+     * @param clientPool    The client pool to sweep.
+     * @param buckets       The amount of buckets to split the slots of the pool into.
+     */
+    public IdleReaper(ClientPool clientPool, int buckets) {
+        if(buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive");
+        }
+
+        idleLimits = new long[ServiceType.values().length];
+
+        this.clientPool = clientPool;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Sets the idle limit for a service type.
+     *
+     * @param serviceType   The service type.
+     * @param limit         The idle limit in milliseconds, or zero for no limit.
+     */
+    public void setIdleLimit(ServiceType serviceType, long limit) {
+        idleLimits[serviceType.ordinal()] = TimeUnit.MILLISECONDS.toNanos(limit);
+    }
+
+    @Override
+    public void execute() {
+        long now = System.nanoTime();
+
+        /* Sweep each of the slots in the bucket */
+        int capacity = clientPool.getCapacity();
+        for(int index = bucket; index < capacity; index += buckets) {
+            Client client = clientPool.getClient(index);
+            if(client == null || client.isDisconnected() || client.getServiceType() == null) {
+                continue;
+            }
+
+            long limit = idleLimits[client.getServiceType().ordinal()];
+            if(limit <= 0L) {
+                continue;
+            }
+
+            /* Disconnect the client if it has stopped sending or stopped accepting its output */
+            boolean readIdle = now - client.getLastReadTime() > limit;
+            boolean writeIdle = client.getOutputQueue().size() > 0 && now - client.getLastWriteTime() > limit;
+            if(readIdle || writeIdle) {
+                client.disconnect();
+                reapedCount++;
+            }
+        }
+
+        bucket = (bucket + 1) % buckets;
+    }
+
+    /**
+     * Gets the amount of clients which have been disconnected for being idle.
+     *
+     * @return  The amount of clients.
+     */
+    public long getReapedCount() {
+        return reapedCount;
+    }
+}
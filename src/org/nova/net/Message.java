@@ -27,4 +27,30 @@ package org.nova.net;
  */
 public abstract class Message {
 
+    /**
+     * The enumeration for the priority of a message, used to decide which messages are
+     * dropped while the output of a client is congested.
+     */
+    public enum Priority {
+
+        /**
+         * The message is dropped while the output of the client is congested.
+         */
+        NORMAL,
+
+        /**
+         * The message is queued while the output of the client is congested, until the
+         * output reaches its hard limit.
+         */
+        URGENT
+    }
+
+    /**
+     * Gets the priority of the message.
+     *
+     * @return  The priority.
+     */
+    public Priority getPriority() {
+        return Priority.NORMAL;
+    }
 }
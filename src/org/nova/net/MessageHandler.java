@@ -72,7 +72,7 @@ public final class MessageHandler {
 
         /* Check if an encoder exists for the message */
         Class<? extends Message> messageClass = message.getClass();
-        if(encoders.containsKey(messageClass)) {
+        if(!encoders.containsKey(messageClass)) {
             return null;
         }
 
@@ -83,6 +83,16 @@ public final class PacketHandler {
         return encoder.encode(state);
     }
 
+    /**
+     * Gets the packet encoder for a packet.
+     *
+     * @param packetName    The name of the packet.
+     * @return              The packet encoder, or null if there is no encoder for the packet.
+     */
+    public PacketEncoder getEncoder(String packetName) {
+        return encoders.get(packetName);
+    }
+
     /**
      * Register a packet encoder.
      *
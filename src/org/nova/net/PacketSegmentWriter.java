@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.net.buffer.OutputQueue;
+import org.nova.net.packet.codec.PacketEncoder;
+import org.nova.net.packet.codec.PacketEncoderState;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Encodes a packet directly into the output queue of a client. Each client reuses a single writer,
+ *          which is only used while the encoder state of the client is locked. The writer may be called again
+ *          after the packet did not fit in a segment, the encoder only advances the cipher once it fits.
+ */
+final class PacketSegmentWriter implements OutputQueue.SegmentWriter {
+
+    /**
+     * The encoder to encode the packet with.
+     */
+    private PacketEncoder encoder;
+
+    /**
+     * The state with the packet to encode.
+     */
+    private PacketEncoderState state;
+
+    /**
+     * Constructs a new {@link PacketSegmentWriter};
+     */
+    PacketSegmentWriter() {}
+
+    /**
+     * Resets the writer for the next packet to encode.
+     *
+     * @param encoder   The encoder to encode the packet with.
+     * @param state     The state with the packet to encode.
+     */
+    void reset(PacketEncoder encoder, PacketEncoderState state) {
+        this.encoder = encoder;
+        this.state = state;
+    }
+
+    @Override
+    public boolean write(ByteBuffer segment) {
+        return encoder.encode(state, segment);
+    }
+}
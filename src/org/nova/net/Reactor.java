@@ -21,14 +21,19 @@
  */
 package org.nova.net;
 
+import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.nova.core.Dispatcher;
 import org.nova.event.Event;
 import org.nova.event.EventHandlerChain;
@@ -40,36 +45,333 @@ import org.nova.task.PartitionedWorkQueue;
 
 /**
  * Created by Trey, Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Accepted channels are registered with the selector on the reactor thread, without any interest
+ *          ops, before the accept event for them is propagated. The accept handler requests read interest
+ *          once the client has been created, which wakes the selector up to apply it.
+ *
+ *          Interest ops of client selection keys are only changed on the reactor thread. Other threads
+ *          request changes through the client, which queues them to be applied before the next select.
+ *
+ *          Events are queued to a lane for their channel, so the events for a client are propagated one
+ *          after another in the order they were selected and never run concurrently on its decoder state.
+ *
+ *          When recycling events, the events, handler chain contexts and propagation tasks created
+ *          for a pulse are reused by the following pulses. Each pulse waits for all of its events
+ *          to finish propagating before returning, and handlers must not keep a reference to a
+ *          socket channel event after handling it.
  */
 public final class Reactor extends Dispatcher {
 
     /**
-     * The amount of tasks per each worker when propagating events.
+     * The amount of tasks per each worker when propagating events, this is only used
+     * if the work queue is not adaptive.
      */
     private static final int TASKS_PER_WORKER = 50;
 
+    /**
+     * The amount of lanes to order the events for each channel with.
+     */
+    private static final int LANES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
     /**
      * The selector to use for the reactor.
      */
     private Selector selector;
 
+    /**
+     * The socket channels that have been handed to this reactor by an acceptor
+     * and are waiting to be registered with the selector.
+     */
+    private Queue<SocketChannel> pendingChannels;
+
+    /**
+     * The amount of socket channels waiting to be registered.
+     */
+    private AtomicInteger pendingCount;
+
+    /**
+     * The clients with interest op changes waiting to be applied on the reactor thread.
+     */
+    private Queue<Client> interestChanges;
+
+    /**
+     * The flag for if the selector has been woken up since the interest op changes were last applied.
+     */
+    private AtomicBoolean wakeupPending;
+
+    /**
+     * The amount of keys registered to the selector as of the last pulse.
+     */
+    private volatile int registeredCount;
+
+    /**
+     * The flag for if events are recycled between pulses.
+     */
+    private boolean recycleEvents;
+
+    /**
+     * The work queue for the propagation tasks, which orders the events for each channel.
+     */
+    private PartitionedWorkQueue workQueue;
+
+    /**
+     * The propagation tasks reused between pulses when recycling events.
+     */
+    private List<PropagationTask> recycledTasks;
+
+    /**
+     * The amount of recycled propagation tasks in use for the current pulse.
+     */
+    private int recycledTaskCount;
+
     /**
      * Constructs a new {@link Reactor};
      * 
      * @param selector  The selector for the reactor.
      */
     public Reactor(Selector selector) {
+        this(selector, false);
+    }
+
+    /**
+     * Constructs a new {@link Reactor};
+     *
+     * @param selector      The selector for the reactor.
+     * @param recycleEvents The flag for if events should be recycled between pulses.
+     */
+    public Reactor(Selector selector, boolean recycleEvents) {
+        pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        pendingCount = new AtomicInteger();
+        interestChanges = new ConcurrentLinkedQueue<Client>();
+        wakeupPending = new AtomicBoolean();
+
+        /* The work queue keeps its lanes between each pulse so that it is always reused */
+        workQueue = new PartitionedWorkQueue(TASKS_PER_WORKER, LANES);
+        workQueue.setAdaptive(true);
+
+        /* Create the structures reused between each pulse */
+        if(recycleEvents) {
+            recycledTasks = new ArrayList<PropagationTask>();
+        }
+
         this.selector = selector;
+        this.recycleEvents = recycleEvents;
+    }
+
+    /**
+     * Hands an accepted socket channel to this reactor. The channel is registered with the
+     * selector on the reactor thread during its next pulse, and then an accept event is
+     * propagated down the handler chain. This method may be called from any thread.
+     *
+     * @param socketChannel The accepted socket channel, already configured as non-blocking.
+     */
+    public void register(SocketChannel socketChannel) {
+        pendingChannels.add(socketChannel);
+        pendingCount.incrementAndGet();
+
+        /* Wake the selector so the channel does not wait for the next ready key */
+        selector.wakeup();
+    }
+
+    /**
+     * Queues a client with interest op changes to be applied on the reactor thread before
+     * the next select. The selector is woken up at most once for each batch of changes.
+     *
+     * @param client    The client with the interest op changes.
+     */
+    void submitInterestChange(Client client) {
+        interestChanges.add(client);
+
+        if(wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers each of the channels handed off by an acceptor and queues an accept event for them.
+     *
+     * @return  The amount of channels which were registered.
+     */
+    private int registerPendingChannels() {
+        int registered = 0;
+
+        SocketChannel pendingChannel;
+        while((pendingChannel = pendingChannels.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if(accept(pendingChannel)) {
+                registered++;
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Registers an accepted channel with the selector, without any interest ops, and queues an
+     * accept event for it. The channel is closed if there is no handler chain for the event.
+     *
+     * @param socketChannel The accepted socket channel, already configured as non-blocking.
+     * @return              If the channel was registered and the event was queued.
+     */
+    private boolean accept(SocketChannel socketChannel) {
+        SelectionKey key;
+        try {
+            key = socketChannel.register(selector, 0);
+        } catch(IOException ex) {
+
+            /* The channel was closed before it could be registered */
+            close(socketChannel);
+            return false;
+        }
+
+        if(!queueEvent(workQueue, socketChannel, key, SocketInterest.ACCEPT)) {
+            key.cancel();
+            close(socketChannel);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes a channel, ignoring any exception as the channel is being dropped.
+     *
+     * @param socketChannel The channel to close.
+     */
+    private static void close(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch(IOException ex) {
+            /* Ignore, the channel is being dropped anyway */
+        }
+    }
+
+    /**
+     * Applies each of the queued interest op changes.
+     */
+    private void applyInterestChanges() {
+        wakeupPending.set(false);
+
+        Client client;
+        while((client = interestChanges.poll()) != null) {
+            client.applyInterestOps();
+        }
+    }
+
+    /**
+     * Gets the load of this reactor, which is the amount of channels it is serving
+     * plus the amount of channels that are waiting to be registered.
+     *
+     * @return  The load.
+     */
+    public int getLoad() {
+        return registeredCount + pendingCount.get();
+    }
+
+    /**
+     * Wakes up the selector if it is currently blocked selecting keys.
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Gets the selector for this reactor.
+     *
+     * @return  The selector.
+     */
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Queues an event to be propagated down its event handler chain.
+     *
+     * @param workQueue     The work queue to add the propagation task to.
+     * @param socketChannel The socket channel that triggered the event.
+     * @param key           The selection key that was used to indicate interest.
+     * @param interest      The interest of the socket.
+     * @return              If there was an event handler chain to propagate the event down.
+     */
+    private boolean queueEvent(PartitionedWorkQueue workQueue, SocketChannel socketChannel, SelectionKey key, SocketInterest interest) {
+
+        if(!recycleEvents) {
+
+            /* Get and check if the event handler chain is valid */
+            Event event = new SocketChannelEvent(socketChannel, this, key, interest);
+            EventHandlerChain chain = getHandlerChainFor(event);
+            if(chain == null) {
+                return false;
+            }
+
+            /* Add a new propagation task to the work queue */
+            workQueue.add(new PropagationTask(chain.createNewEventHandlerChainContext(event)), getLaneKey(socketChannel, key));
+            return true;
+        }
+
+        /* Get the next recycled task, creating it if this is the most events seen in a pulse */
+        PropagationTask task;
+        if(recycledTaskCount < recycledTasks.size()) {
+            task = recycledTasks.get(recycledTaskCount);
+        } else {
+            SocketChannelEvent event = new SocketChannelEvent();
+            task = new PropagationTask(new EventHandlerChainContext<SocketChannelEvent>(event, null));
+            recycledTasks.add(task);
+        }
+
+        /* Reset the recycled event and get the event handler chain */
+        EventHandlerChainContext context = task.getContext();
+        SocketChannelEvent event = (SocketChannelEvent) context.getEvent();
+        event.reset(socketChannel, this, key, interest);
+
+        EventHandlerChain chain = getHandlerChainFor(event);
+        if(chain == null) {
+            return false;
+        }
+
+        /* Reset the context and add the task to the work queue */
+        chain.resetEventHandlerChainContext(context, event);
+        workQueue.add(task, getLaneKey(socketChannel, key));
+        recycledTaskCount++;
+        return true;
+    }
+
+    /**
+     * Gets the key of the lane to order the events for a channel with. Clients stored in a pool
+     * use their slot index, which spreads the clients evenly over the lanes.
+     *
+     * @param socketChannel The socket channel that triggered the event.
+     * @param key           The selection key that was used to indicate interest.
+     * @return              The lane key.
+     */
+    private static int getLaneKey(SocketChannel socketChannel, SelectionKey key) {
+        Object attachment = key == null ? null : key.attachment();
+        if(attachment instanceof Integer) {
+            return (Integer) attachment;
+        }
+        return System.identityHashCode(socketChannel);
     }
 
     @Override
     public void dispatchEvents(ExecutorService executor) {
         try {
 
-            /* Create the work queue with the default amount of tasks per worker */
-            PartitionedWorkQueue workQueue = new PartitionedWorkQueue(TASKS_PER_WORKER);
+            /* Reuse the recycled tasks */
+            if(recycleEvents) {
+                workQueue.clear();
+                recycledTaskCount = 0;
+            }
+
+            /* Apply the interest op changes requested from other threads since the last pulse */
+            applyInterestChanges();
 
-            selector.select();
+            /* Register the channels handed off by an acceptor, without blocking if their events are queued */
+            if(registerPendingChannels() > 0) {
+                selector.selectNow();
+            } else {
+                selector.select();
+            }
 
             Iterator<SelectionKey> it = selector.selectedKeys().iterator();
             while (it.hasNext()) {
@@ -80,8 +382,6 @@ public final class Reactor extends Dispatcher {
 
                 if (key.isValid()) {
 
-                    List<Event> events = new LinkedList<Event>();
-
                     if (key.isAcceptable()) {
 
                         /* Accept the socket channel */
@@ -95,48 +395,37 @@ public final class Reactor extends Dispatcher {
                         
                         socketChannel.configureBlocking(false);
 
-                        /* Create the socket channel event with the accept socket interest */
-                        events.add(new SocketChannelEvent(socketChannel, selector, key, SocketInterest.ACCEPT));
+                        /* Register the channel and propagate the event with the accept socket interest */
+                        accept(socketChannel);
                     }
 
                     if (key.isReadable()) {
                         
                         SocketChannel socketChannel = (SocketChannel) key.channel();
 
-                        /* Create the socket channel event with the read socket interest */
-                        events.add(new SocketChannelEvent(socketChannel, selector, key, SocketInterest.READ));
+                        /* Propagate the event with the read socket interest */
+                        queueEvent(workQueue, socketChannel, key, SocketInterest.READ);
                     }
 
                     if (key.isWritable()) {
 
                         SocketChannel socketChannel = (SocketChannel) key.channel();
 
-                        /* Create the socket channel event with the write socket interest */
-                        events.add(new SocketChannelEvent(socketChannel, selector, key, SocketInterest.WRITE));
-                    }
-
-                    /* Propagate the events down the event handler chain if a valid interest was specified */
-                    if(!events.isEmpty()) {
-                        for(Event event : events) {
-
-                            /* Get and check if the event handler chain is valid */
-                            EventHandlerChain chain = getHandlerChainFor(event);
-                            if(chain == null) {
-                                continue;
-                            }
-
-                            /* Create the event handler chain context */
-                            EventHandlerChainContext context = chain.createNewEventHandlerChainContext(event);
-
-                            /* Add a new propagation task to the work queue */
-                            workQueue.add(new PropagationTask(context));
-                        }
+                        /* Propagate the event with the write socket interest */
+                        queueEvent(workQueue, socketChannel, key, SocketInterest.WRITE);
                     }
                 }
             }
 
-            /* Execute all the queued tasks */
-            workQueue.execute(executor);
+            /* Publish the amount of keys being served for load balancing */
+            registeredCount = selector.keys().size();
+
+            /* Execute all the queued tasks, waiting for them to finish if they are to be recycled */
+            if(recycleEvents) {
+                workQueue.executeAndWait(executor);
+            } else {
+                workQueue.execute(executor);
+            }
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -146,6 +435,6 @@ public final class Reactor extends Dispatcher {
     /** Just handle the event immediately */
     @Override
     public void handleEvent(Event event) {
-        getHandlerChainFor(event).createNewEventHandlerChainContext(event).doAll();
+        getHandlerChainFor(event).dispatch(event);
     }
 }
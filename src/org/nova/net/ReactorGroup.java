@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import org.nova.event.Event;
+import org.nova.event.EventHandler;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Selector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * A group of reactors which each run their own select loop on a dedicated thread. Connections
+ * are accepted by a single {@link Acceptor} and handed off to one of the reactors in the group.
+ */
+public final class ReactorGroup {
+
+    /**
+     * The enumeration for each of the policies used to pick the reactor for a new connection.
+     */
+    public enum SelectionPolicy {
+
+        /**
+         * Each connection is handed to the next reactor in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Each connection is handed to the reactor currently serving the least channels.
+         */
+        LEAST_LOADED
+    }
+
+    /**
+     * The reactors in this group.
+     */
+    private Reactor[] reactors;
+
+    /**
+     * The threads running each of the reactors.
+     */
+    private Thread[] threads;
+
+    /**
+     * The acceptor which hands connections off to the reactors.
+     */
+    private Acceptor acceptor;
+
+    /**
+     * The policy used to pick the reactor for a new connection.
+     */
+    private SelectionPolicy policy;
+
+    /**
+     * The counter used to pick reactors in round robin order.
+     */
+    private AtomicInteger counter;
+
+    /**
+     * The flag for if the reactor threads are running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructs a new {@link ReactorGroup};
+     *
+     * @param size      The amount of reactors in the group.
+     * @param policy    The policy used to pick the reactor for a new connection.
+     */
+    public ReactorGroup(int size, SelectionPolicy policy) throws IOException {
+        this(size, policy, false);
+    }
+
+    /**
+     * Constructs a new {@link ReactorGroup};
+     *
+     * @param size          The amount of reactors in the group.
+     * @param policy        The policy used to pick the reactor for a new connection.
+     * @param recycleEvents The flag for if the reactors should recycle events between pulses.
+     */
+    public ReactorGroup(int size, SelectionPolicy policy, boolean recycleEvents) throws IOException {
+
+        /* Check if the size is valid */
+        if(size < 1) {
+            throw new IllegalArgumentException("size must be at least one");
+        }
+
+        reactors = new Reactor[size];
+        for(int i = 0; i < size; i++) {
+            reactors[i] = new Reactor(Selector.open(), recycleEvents);
+        }
+
+        threads = new Thread[size];
+        acceptor = new Acceptor(this);
+        counter = new AtomicInteger();
+
+        this.policy = policy;
+    }
+
+    /**
+     * Binds the acceptor of this group to an address.
+     *
+     * @param address   The address to bind to.
+     */
+    public void bind(SocketAddress address) throws IOException {
+        acceptor.bind(address);
+    }
+
+    /**
+     * Registers an event handler to each of the reactors in this group.
+     *
+     * @param eventClass    The class of the event to register the handler for.
+     * @param handler       The event handler to register.
+     */
+    public void registerHandler(Class<? extends Event> eventClass, EventHandler<?> handler) {
+        for(Reactor reactor : reactors) {
+            reactor.registerHandler(eventClass, handler);
+        }
+    }
+
+    /**
+     * Gets the reactor to hand the next connection off to.
+     *
+     * @return  The reactor.
+     */
+    public Reactor next() {
+        switch(policy) {
+
+            case LEAST_LOADED:
+                Reactor leastLoaded = reactors[0];
+                int lowestLoad = leastLoaded.getLoad();
+                for(int i = 1; i < reactors.length; i++) {
+                    int load = reactors[i].getLoad();
+                    if(load < lowestLoad) {
+                        leastLoaded = reactors[i];
+                        lowestLoad = load;
+                    }
+                }
+                return leastLoaded;
+
+            default:
+                return reactors[(counter.getAndIncrement() & Integer.MAX_VALUE) % reactors.length];
+        }
+    }
+
+    /**
+     * Starts each of the reactor threads and the acceptor thread.
+     *
+     * @param executor  The executor service that the reactors dispatch events to.
+     */
+    public void start(final ExecutorService executor) {
+
+        /* Check if the group has already been started */
+        if(running) {
+            throw new IllegalStateException("reactor group already started");
+        }
+
+        running = true;
+
+        for(int i = 0; i < reactors.length; i++) {
+            final Reactor reactor = reactors[i];
+
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    while(running) {
+                        reactor.dispatchEvents(executor);
+                    }
+                }
+            }, "reactor-" + i);
+            threads[i].start();
+        }
+
+        new Thread(acceptor, "acceptor").start();
+    }
+
+    /**
+     * Stops the acceptor and each of the reactor threads.
+     */
+    public void stop() {
+        running = false;
+
+        acceptor.stop();
+        for(Reactor reactor : reactors) {
+            reactor.wakeup();
+        }
+    }
+
+    /**
+     * Gets the reactors in this group.
+     *
+     * @return  The reactors.
+     */
+    public Reactor[] getReactors() {
+        return reactors;
+    }
+}
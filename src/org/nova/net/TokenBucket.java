@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * A token bucket which limits the rate that connections are accepted at, while allowing short bursts.
+ */
+public final class TokenBucket {
+
+    /**
+     * The maximum amount of tokens that the bucket can hold.
+     */
+    private double capacity;
+
+    /**
+     * The amount of tokens added to the bucket each nanosecond.
+     */
+    private double refillRate;
+
+    /**
+     * The amount of tokens in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * The time in nanoseconds that the bucket was last refilled.
+     */
+    private long lastRefill;
+
+    /**
+     * Constructs a new {@link TokenBucket};
+     *
+     * @param rate      The amount of tokens added to the bucket each second.
+     * @param burst     The maximum amount of tokens that the bucket can hold.
+     */
+    public TokenBucket(double rate, int burst) {
+        if(rate <= 0.0D || burst <= 0) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+
+        capacity = burst;
+        refillRate = rate / TimeUnit.SECONDS.toNanos(1L);
+        tokens = burst;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Attempts to take a token from the bucket.
+     *
+     * @return  If a token was taken.
+     */
+    public synchronized boolean tryAcquire() {
+
+        /* Refill the bucket for the time since it was last refilled */
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillRate);
+        lastRefill = now;
+
+        if(tokens < 1.0D) {
+            return false;
+        }
+
+        tokens -= 1.0D;
+        return true;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * An arena of direct byte buffers split into size classes. Each size class carves its buffers out
+ * of large direct slabs and keeps released buffers on a free list, so buffers are never freed
+ * back to the operating system and socket reads and writes avoid the temporary direct buffer
+ * copy made for heap buffers.
+ */
+public final class BufferArena {
+
+    /**
+     * The default capacities for each of the size classes.
+     */
+    public static final int[] DEFAULT_SIZE_CLASSES = { 512, 2048, 8192, 32768 };
+
+    /**
+     * The default amount of bytes to allocate for each slab.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /**
+     * The size classes for this arena, ordered by capacity.
+     */
+    private SizeClass[] sizeClasses;
+
+    /**
+     * Constructs a new {@link BufferArena} with the default size classes.
+     */
+    public BufferArena() {
+        this(DEFAULT_SIZE_CLASSES, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Constructs a new {@link BufferArena};
+     *
+     * @param capacities    The capacities for each of the size classes.
+     * @param slabSize      The amount of bytes to allocate for each slab.
+     */
+    public BufferArena(int[] capacities, int slabSize) {
+
+        /* Check if the size classes are valid */
+        if(capacities.length < 1) {
+            throw new IllegalArgumentException("arena must have at least one size class");
+        }
+
+        int[] sorted = Arrays.copyOf(capacities, capacities.length);
+        Arrays.sort(sorted);
+
+        sizeClasses = new SizeClass[sorted.length];
+        for(int i = 0; i < sorted.length; i++) {
+            sizeClasses[i] = new SizeClass(sorted[i], Math.max(1, slabSize / sorted[i]));
+        }
+    }
+
+    /**
+     * The inline class for a size class of the arena.
+     */
+    private static final class SizeClass {
+
+        /**
+         * The capacity of each buffer in this size class.
+         */
+        private int capacity;
+
+        /**
+         * The amount of buffers carved from each slab.
+         */
+        private int buffersPerSlab;
+
+        /**
+         * The buffers which are free to be borrowed.
+         */
+        private Deque<ByteBuffer> free;
+
+        /**
+         * Constructs a new {@link SizeClass};
+         *
+         * @param capacity          The capacity of each buffer.
+         * @param buffersPerSlab    The amount of buffers carved from each slab.
+         */
+        private SizeClass(int capacity, int buffersPerSlab) {
+            free = new ArrayDeque<ByteBuffer>();
+
+            this.capacity = capacity;
+            this.buffersPerSlab = buffersPerSlab;
+        }
+
+        /**
+         * Borrows a buffer, carving a new slab if there are no free buffers.
+         *
+         * @return  The borrowed buffer.
+         */
+        private synchronized ByteBuffer borrow() {
+            if(free.isEmpty()) {
+
+                /* Allocate a new slab and slice it into buffers */
+                ByteBuffer slab = ByteBuffer.allocateDirect(capacity * buffersPerSlab);
+                for(int i = 0; i < buffersPerSlab; i++) {
+                    slab.limit((i + 1) * capacity).position(i * capacity);
+                    free.push(slab.slice());
+                }
+            }
+            return free.pop();
+        }
+
+        /**
+         * Gives a buffer back to the free list.
+         *
+         * @param buffer    The buffer to give back.
+         */
+        private synchronized void giveBack(ByteBuffer buffer) {
+            free.push(buffer);
+        }
+    }
+
+    /**
+     * Gets the size class to use for a capacity.
+     *
+     * @param capacity  The minimum capacity.
+     * @return          The smallest size class which can hold the capacity, or null if the capacity
+     *                  is larger than each of the size classes.
+     */
+    private SizeClass getSizeClass(int capacity) {
+        for(SizeClass sizeClass : sizeClasses) {
+            if(sizeClass.capacity >= capacity) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Borrows a cleared buffer from the arena. Buffers larger than the largest size class
+     * are allocated on their own and are not pooled.
+     *
+     * @param capacity  The minimum capacity of the buffer.
+     * @return          The borrowed buffer.
+     */
+    public ByteBuffer allocate(int capacity) {
+        SizeClass sizeClass = getSizeClass(capacity);
+        if(sizeClass == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        ByteBuffer buffer = sizeClass.borrow();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the arena. The buffer must not be used after it has been released.
+     *
+     * @param buffer    The buffer to release.
+     */
+    public void release(ByteBuffer buffer) {
+
+        /* Only direct buffers which match a size class are pooled */
+        if(!buffer.isDirect()) {
+            return;
+        }
+
+        SizeClass sizeClass = getSizeClass(buffer.capacity());
+        if(sizeClass != null && sizeClass.capacity == buffer.capacity()) {
+            sizeClass.giveBack(buffer);
+        }
+    }
+
+    /**
+     * Gets the capacity of the next size class up from a capacity.
+     *
+     * @param capacity  The capacity.
+     * @return          The capacity of the next size class, or the capacity if there is no
+     *                  larger size class.
+     */
+    public int getNextCapacity(int capacity) {
+        SizeClass sizeClass = getSizeClass(capacity + 1);
+        return sizeClass == null ? capacity : sizeClass.capacity;
+    }
+
+    /**
+     * Gets the capacity of the largest size class.
+     *
+     * @return  The capacity.
+     */
+    public int getMaximumCapacity() {
+        return sizeClasses[sizeClasses.length - 1].capacity;
+    }
+}
@@ -0,0 +1,473 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net.buffer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * A queue of chained buffer segments waiting to be written to a channel.
+ *
+ * Notes:
+ *
+ *          Once the amount of queued bytes reaches the high watermark the queue is congested, and only
+ *          urgent writes are accepted until the queue drains below the low watermark. Writes that would
+ *          take the queue past the hard limit overflow it, at which point the connection should be dropped.
+ *
+ *          Segment writers write straight into the segment at the tail of the queue. If the bytes do not fit
+ *          the position of the segment is reset, and the writer is retried in a fresh segment which is
+ *          doubled in size for each retry.
+ */
+public final class OutputQueue {
+
+    /**
+     * The enumeration for the result of offering bytes to the queue.
+     */
+    public enum Result {
+
+        /**
+         * The bytes were queued.
+         */
+        QUEUED,
+
+        /**
+         * The bytes were refused because the queue is congested.
+         */
+        REFUSED,
+
+        /**
+         * The bytes were refused because they would take the queue past its hard limit,
+         * or because the queue has been closed.
+         */
+        OVERFLOWED
+    }
+
+    /**
+     * The interface for writing bytes directly into the segments of the queue.
+     */
+    public interface SegmentWriter {
+
+        /**
+         * Writes the bytes to a segment from its position. This may be called more than once if the bytes
+         * do not fit, so each call must write the same bytes.
+         *
+         * @param segment   The segment to write to.
+         * @return          If the bytes fit in the segment, a buffer overflow is treated the same as false.
+         */
+        boolean write(ByteBuffer segment);
+    }
+
+    /**
+     * The default capacity of each segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 2048;
+
+    /**
+     * The default low watermark, in bytes.
+     */
+    public static final int DEFAULT_LOW_WATERMARK = 32 * 1024;
+
+    /**
+     * The default high watermark, in bytes.
+     */
+    public static final int DEFAULT_HIGH_WATERMARK = 64 * 1024;
+
+    /**
+     * The default hard limit, in bytes.
+     */
+    public static final int DEFAULT_HARD_LIMIT = 256 * 1024;
+
+    /**
+     * The default maximum amount of segments to write with each flush.
+     */
+    public static final int DEFAULT_MAX_FLUSH_SEGMENTS = 16;
+
+    /**
+     * The default amount of bytes after which no more segments are added to a flush.
+     */
+    public static final int DEFAULT_MAX_FLUSH_BYTES = 64 * 1024;
+
+    /**
+     * The arena to borrow segments from, or null if segments are allocated.
+     */
+    private BufferArena arena;
+
+    /**
+     * The segments of the queue, from the oldest to the newest.
+     */
+    private Deque<ByteBuffer> segments;
+
+    /**
+     * The amount of segments at the head of the queue which have been flipped to be written,
+     * these segments no longer accept bytes.
+     */
+    private int sealed;
+
+    /**
+     * The segments gathered to be written by a flush.
+     */
+    private ByteBuffer[] gathered;
+
+    /**
+     * The capacity of each segment.
+     */
+    private int segmentSize;
+
+    /**
+     * The amount of bytes waiting to be written.
+     */
+    private int size;
+
+    /**
+     * The low watermark, in bytes.
+     */
+    private int lowWatermark;
+
+    /**
+     * The high watermark, in bytes.
+     */
+    private int highWatermark;
+
+    /**
+     * The hard limit, in bytes.
+     */
+    private int hardLimit;
+
+    /**
+     * The flag for if the queue is congested.
+     */
+    private boolean congested;
+
+    /**
+     * The flag for if the queue has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new {@link OutputQueue};
+     *
+     * @param arena         The arena to borrow segments from, or null to allocate the segments.
+     * @param segmentSize   The capacity of each segment.
+     */
+    public OutputQueue(BufferArena arena, int segmentSize) {
+        segments = new ArrayDeque<ByteBuffer>();
+        gathered = new ByteBuffer[DEFAULT_MAX_FLUSH_SEGMENTS];
+        lowWatermark = DEFAULT_LOW_WATERMARK;
+        highWatermark = DEFAULT_HIGH_WATERMARK;
+        hardLimit = DEFAULT_HARD_LIMIT;
+
+        this.arena = arena;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets the watermarks for the queue.
+     *
+     * @param lowWatermark  The amount of bytes the queue must drain to before it is no longer congested.
+     * @param highWatermark The amount of bytes at which the queue becomes congested.
+     */
+    public synchronized void setWatermarks(int lowWatermark, int highWatermark) {
+
+        /* Check if the watermarks are valid */
+        if(lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("low watermark must be between zero and the high watermark");
+        }
+
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Sets the hard limit of the queue.
+     *
+     * @param hardLimit The maximum amount of bytes the queue can hold.
+     */
+    public synchronized void setHardLimit(int hardLimit) {
+        this.hardLimit = hardLimit;
+    }
+
+    /**
+     * Gets if the queue will accept bytes.
+     *
+     * @param urgent    If the bytes are urgent, urgent bytes are accepted while congested.
+     * @return          If the queue will accept the bytes.
+     */
+    public synchronized boolean accepts(boolean urgent) {
+        return !closed && (urgent || !congested);
+    }
+
+    /**
+     * Offers the remaining bytes of a buffer to the queue.
+     *
+     * @param buffer    The buffer to copy the bytes from.
+     * @param urgent    If the bytes are urgent, urgent bytes are queued while congested.
+     * @return          The result of the offer.
+     */
+    public synchronized Result offer(ByteBuffer buffer, boolean urgent) {
+        int length = buffer.remaining();
+
+        /* Check if the bytes would take the queue past its hard limit */
+        if(closed || size + length > hardLimit) {
+            return Result.OVERFLOWED;
+        }
+
+        /* Check if the bytes should be refused */
+        if(congested && !urgent) {
+            return Result.REFUSED;
+        }
+
+        while(buffer.hasRemaining()) {
+
+            /* Get the segment at the tail of the queue, or allocate a new one if it is full or sealed */
+            ByteBuffer tail = segments.size() > sealed ? segments.peekLast() : null;
+            if(tail == null || !tail.hasRemaining()) {
+                tail = allocate(Math.max(segmentSize, buffer.remaining()));
+                segments.addLast(tail);
+            }
+
+            /* Copy as many bytes as the segment can hold */
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + Math.min(tail.remaining(), buffer.remaining()));
+            tail.put(buffer);
+            buffer.limit(limit);
+        }
+
+        size += length;
+        if(size >= highWatermark) {
+            congested = true;
+        }
+        return Result.QUEUED;
+    }
+
+    /**
+     * Offers the bytes written by a segment writer to the queue, which are written directly into the
+     * segment at the tail of the queue.
+     *
+     * @param writer    The writer to write the bytes with.
+     * @param urgent    If the bytes are urgent, urgent bytes are queued while congested.
+     * @return          The result of the offer.
+     */
+    public synchronized Result offer(SegmentWriter writer, boolean urgent) {
+
+        /* Check if the queue has been closed */
+        if(closed) {
+            return Result.OVERFLOWED;
+        }
+
+        /* Check if the bytes should be refused */
+        if(congested && !urgent) {
+            return Result.REFUSED;
+        }
+
+        /* Get the segment at the tail of the queue if it still accepts bytes */
+        ByteBuffer tail = segments.size() > sealed ? segments.peekLast() : null;
+        boolean fresh = false;
+
+        int capacity = segmentSize;
+        for(;;) {
+
+            /* Allocate a fresh segment if there is no tail to write to */
+            if(tail == null) {
+                if(capacity > hardLimit) {
+                    return Result.OVERFLOWED;
+                }
+
+                tail = allocate(capacity);
+                fresh = true;
+            }
+
+            /* Write the bytes into the segment, discarding them and a fresh segment if the writer fails */
+            int start = tail.position();
+            boolean written = false;
+            try {
+                written = writer.write(tail);
+            } catch(BufferOverflowException ex) {
+                written = false;
+            } finally {
+                if(!written) {
+                    tail.position(start);
+                    if(fresh) {
+                        release(tail);
+                    }
+                }
+            }
+
+            int length = tail.position() - start;
+            if(written && size + length > hardLimit) {
+
+                /* The bytes would take the queue past its hard limit, discard them */
+                tail.position(start);
+                if(fresh) {
+                    release(tail);
+                }
+                return Result.OVERFLOWED;
+            }
+
+            if(written) {
+                if(fresh) {
+                    segments.addLast(tail);
+                }
+
+                size += length;
+                if(size >= highWatermark) {
+                    congested = true;
+                }
+                return Result.QUEUED;
+            }
+
+            /* Retry in a fresh segment, doubling it if it was already fresh */
+            if(fresh) {
+                capacity <<= 1;
+            }
+            tail = null;
+        }
+    }
+
+    /**
+     * Writes as many of the queued bytes to a channel as it will accept, using the
+     * default limits for a flush.
+     *
+     * @param channel   The channel to write to.
+     * @return          If there are still bytes waiting to be written.
+     */
+    public boolean flush(GatheringByteChannel channel) throws IOException {
+        return flush(channel, DEFAULT_MAX_FLUSH_SEGMENTS, DEFAULT_MAX_FLUSH_BYTES);
+    }
+
+    /**
+     * Writes the segments at the head of the queue to a channel with a single gathering write.
+     * Segments are released once they have been fully written.
+     *
+     * @param channel       The channel to write to.
+     * @param maxSegments   The maximum amount of segments to write.
+     * @param maxBytes      The amount of bytes after which no more segments are added to the write,
+     *                      at least one segment is always written.
+     * @return              If there are still bytes waiting to be written.
+     */
+    public synchronized boolean flush(GatheringByteChannel channel, int maxSegments, int maxBytes) throws IOException {
+
+        /* Make sure the gathered segment array can hold the maximum amount of segments */
+        if(gathered.length < maxSegments) {
+            gathered = new ByteBuffer[maxSegments];
+        }
+
+        /* Gather the segments at the head, sealing each segment that has not yet been sealed */
+        int count = 0;
+        int bytes = 0;
+        for(ByteBuffer segment : segments) {
+            if(count >= maxSegments || count > 0 && bytes >= maxBytes) {
+                break;
+            }
+
+            if(count >= sealed) {
+                segment.flip();
+                sealed++;
+            }
+
+            gathered[count++] = segment;
+            bytes += segment.remaining();
+        }
+
+        if(count > 0) {
+            size -= (int) channel.write(gathered, 0, count);
+
+            /* Release each of the fully written segments */
+            for(int i = 0; i < count; i++) {
+                ByteBuffer segment = gathered[i];
+                gathered[i] = null;
+
+                if(segment.hasRemaining()) {
+                    continue;
+                }
+
+                segments.pollFirst();
+                sealed--;
+                release(segment);
+            }
+        }
+
+        /* Clear the congestion once the queue has drained past the low watermark */
+        if(size <= lowWatermark) {
+            congested = false;
+        }
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Closes the queue, releasing each of the segments. Bytes offered to a closed queue overflow it.
+     */
+    public synchronized void close() {
+        closed = true;
+
+        while(!segments.isEmpty()) {
+            release(segments.pollFirst());
+        }
+        sealed = 0;
+        size = 0;
+    }
+
+    /**
+     * Gets the amount of bytes waiting to be written.
+     *
+     * @return  The amount of bytes.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets if the queue is congested.
+     *
+     * @return  If the queue is congested.
+     */
+    public synchronized boolean isCongested() {
+        return congested;
+    }
+
+    /**
+     * Allocates a segment.
+     *
+     * @param capacity  The minimum capacity of the segment.
+     * @return          The segment.
+     */
+    private ByteBuffer allocate(int capacity) {
+        return arena != null ? arena.allocate(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Releases a segment.
+     *
+     * @param segment   The segment to release.
+     */
+    private void release(ByteBuffer segment) {
+        if(arena != null) {
+            arena.release(segment);
+        }
+    }
+}
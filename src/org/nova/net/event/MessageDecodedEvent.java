@@ -22,6 +22,8 @@
 
 package org.nova.net.event;
 
+import org.nova.event.EventFactory;
+import org.nova.event.EventTranslator;
 import org.nova.net.Client;
 import org.nova.net.Message;
 
@@ -30,11 +32,45 @@ import org.nova.net.Message;
  */
 public final class MessageDecodedEvent extends ClientEvent {
 
+    /**
+     * The factory for the events preallocated by a ring.
+     */
+    public static final EventFactory<MessageDecodedEvent> FACTORY = new EventFactory<MessageDecodedEvent>() {
+
+        @Override
+        public MessageDecodedEvent create() {
+            return new MessageDecodedEvent();
+        }
+
+        @Override
+        public void clear(MessageDecodedEvent event) {
+            event.reset(null, null);
+        }
+    };
+
+    /**
+     * The translator which fills in a preallocated event with a client and its decoded message.
+     */
+    public static final EventTranslator<MessageDecodedEvent, Client, Message> TRANSLATOR = new EventTranslator<MessageDecodedEvent, Client, Message>() {
+
+        @Override
+        public void translate(MessageDecodedEvent event, Client client, Message message) {
+            event.reset(client, message);
+        }
+    };
+
     /**
      * The decoded message from the client.
      */
     private Message message;
 
+    /**
+     * Constructs a new {@link MessageDecodedEvent} to be reused, which has no client or message until it is reset.
+     */
+    private MessageDecodedEvent() {
+        super(null);
+    }
+
     /**
      * Constructs a new {@link MessageDecodedEvent};
      *
@@ -55,4 +91,15 @@ public final class MessageDecodedEvent extends ClientEvent {
     public Message getMessage() {
         return message;
     }
+
+    /**
+     * Resets this event so that it can be reused.
+     *
+     * @param client    The source of the event.
+     * @param message   The decoded message from the client.
+     */
+    public void reset(Client client, Message message) {
+        setSource(client);
+        this.message = message;
+    }
 }
@@ -23,6 +23,7 @@
 package org.nova.net.event;
 
 import org.nova.event.Event;
+import org.nova.net.Reactor;
 
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -55,9 +56,9 @@ public final class SocketChannelEvent extends Event<SocketChannel> {
     }
 
     /**
-     * The selector which the read interest was indicated from.
+     * The reactor which the interest was indicated from.
      */
-    private Selector selector;
+    private Reactor reactor;
 
     /**
      * The selection key that was used to indicate interest.
@@ -73,14 +74,38 @@ public final class SocketChannelEvent extends Event<SocketChannel> {
      * Constructs a new {@link SocketChannelEvent};
      *
      * @param socketChannel The socket channel that triggered the event.
-     * @param selector      The selector which the interest was indicated from.
+     * @param reactor       The reactor which the interest was indicated from.
      * @param selectionKey  The selection key that was used indicate interest.
      * @param interest      The interest of the socket.
      */
-    public SocketChannelEvent(SocketChannel socketChannel, Selector selector, SelectionKey selectionKey, SocketInterest interest) {
+    public SocketChannelEvent(SocketChannel socketChannel, Reactor reactor, SelectionKey selectionKey, SocketInterest interest) {
         super(socketChannel);
 
-        this.selector = selector;
+        this.reactor = reactor;
+        this.selectionKey = selectionKey;
+        this.interest = interest;
+    }
+
+    /**
+     * Constructs a new {@link SocketChannelEvent} to be recycled, the event
+     * must be reset before it is propagated.
+     */
+    public SocketChannelEvent() {
+        super(null);
+    }
+
+    /**
+     * Resets this event so that it can be recycled for another interest.
+     *
+     * @param socketChannel The socket channel that triggered the event.
+     * @param reactor       The reactor which the interest was indicated from.
+     * @param selectionKey  The selection key that was used indicate interest.
+     * @param interest      The interest of the socket.
+     */
+    public void reset(SocketChannel socketChannel, Reactor reactor, SelectionKey selectionKey, SocketInterest interest) {
+        setSource(socketChannel);
+
+        this.reactor = reactor;
         this.selectionKey = selectionKey;
         this.interest = interest;
     }
@@ -91,7 +116,16 @@ public final class SocketChannelEvent extends Event<SocketChannel> {
      * @return  The selector.
      */
     public Selector getSelector() {
-        return selector;
+        return reactor.getSelector();
+    }
+
+    /**
+     * Gets the reactor which the interest was indicated from.
+     *
+     * @return  The reactor.
+     */
+    public Reactor getReactor() {
+        return reactor;
     }
 
     /**
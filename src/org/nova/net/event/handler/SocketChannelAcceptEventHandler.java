@@ -26,14 +26,32 @@ import org.nova.event.EventHandler;
 import org.nova.event.EventHandlerChainContext;
 import org.nova.net.Client;
 import org.nova.net.ClientPool;
+import org.nova.net.ConnectionTable;
+import org.nova.net.DisconnectListener;
+import org.nova.net.TokenBucket;
 import org.nova.core.ServiceType;
 import org.nova.net.event.SocketChannelEvent;
 
+import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          The reactor registers the channel without any interest ops before the event is propagated. Connections
+ *          are admitted before a client is created, so refused connections never take a buffer or a client slot,
+ *          and their selection key is cancelled. A connection is refused when
+ *          the accept rate has been exceeded or when its address already has the maximum amount of connections.
+ *          Refused channels are closed with a zero linger, which resets the connection instead of leaving it
+ *          waiting to close.
+ *
+ *          Accepted clients are handled by the service type mapped to the local port that they connected to,
+ *          or by the gateway if the port is not mapped. The ports should be mapped before the reactors start.
  */
 public final class SocketChannelAcceptEventHandler extends EventHandler<SocketChannelEvent> {
 
@@ -42,15 +60,82 @@ public final class SocketChannelAcceptEventHandler extends EventHandler<SocketCh
      */
     private ClientPool clientPool;
 
+    /**
+     * The token bucket limiting the rate that connections are accepted at, or null for no limit.
+     */
+    private TokenBucket acceptRate;
+
+    /**
+     * The table counting the connections for each address, or null for no limit.
+     */
+    private ConnectionTable connectionTable;
+
+    /**
+     * The service types for the clients accepted on each local port.
+     */
+    private Map<Integer, ServiceType> serviceTypes;
+
     /**
      * Constructs a new {@link SocketChannelAcceptEventHandler};
      * 
      * @param clientPool    The client pool to register the clients to.
      */
     public SocketChannelAcceptEventHandler(ClientPool clientPool) {
+        serviceTypes = new HashMap<Integer, ServiceType>();
+
         this.clientPool = clientPool;
     }
 
+    /**
+     * Sets the service type that the clients accepted on a local port are handled by.
+     *
+     * @param port          The local port.
+     * @param serviceType   The service type.
+     */
+    public void setServiceType(int port, ServiceType serviceType) {
+        serviceTypes.put(port, serviceType);
+    }
+
+    /**
+     * Sets the token bucket limiting the rate that connections are accepted at.
+     *
+     * @param acceptRate    The token bucket, or null for no limit.
+     */
+    public void setAcceptRate(TokenBucket acceptRate) {
+        this.acceptRate = acceptRate;
+    }
+
+    /**
+     * Sets the table counting the connections for each address.
+     *
+     * @param connectionTable   The connection table, or null for no limit.
+     */
+    public void setConnectionTable(ConnectionTable connectionTable) {
+        this.connectionTable = connectionTable;
+    }
+
+    /**
+     * Closes a refused channel, resetting the connection.
+     *
+     * @param channel   The channel to close.
+     * @param key       The selection key of the channel.
+     */
+    private static void refuse(SocketChannel channel, SelectionKey key) {
+        key.cancel();
+
+        try {
+            channel.socket().setSoLinger(true, 0);
+        } catch(IOException ex) {
+            /* Ignore, the channel is closed normally */
+        }
+
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            /* Ignore, the channel is being dropped anyway */
+        }
+    }
+
     @Override
     public void handle(SocketChannelEvent event, EventHandlerChainContext<SocketChannelEvent> context) {
 
@@ -62,21 +147,66 @@ public final class SocketChannelAcceptEventHandler extends EventHandler<SocketCh
         /* Stop the context from propagating further */
         context.stop();
 
-        /* Get the selection key to register the client as */
-        SelectionKey key = null;
-        try {
-            SocketChannel channel = event.getSource();
-            key = channel.register(event.getSelector(), SelectionKey.OP_READ);
-        } catch (Throwable t) {
+        SocketChannel channel = event.getSource();
 
-            /* For some reason the channel was closed and we should return */
+        /* The selection key which the reactor registered the channel as */
+        SelectionKey key = event.getSelectionKey();
+
+        /* Refuse the connection if connections are being accepted too quickly */
+        if(acceptRate != null && !acceptRate.tryAcquire()) {
+            refuse(channel, key);
             return;
         }
 
+        /* Refuse the connection if its address has too many connections */
+        final ConnectionTable table = connectionTable;
+        final long addressKey;
+        if(table != null) {
+            if(!channel.socket().isConnected()) {
+                refuse(channel, key);
+                return;
+            }
+
+            addressKey = ConnectionTable.getKey(channel.socket().getInetAddress());
+            if(!table.acquire(addressKey)) {
+                refuse(channel, key);
+                return;
+            }
+        } else {
+            addressKey = 0L;
+        }
+
         /* Create a new client from the selection key */
         Client client = clientPool.create(key);
 
-        /* By default set the handler type as the gateway */
-        client.setServiceType(ServiceType.GATEWAY);
+        /* Close the channel if the client pool is full */
+        if(client == null) {
+            if(table != null) {
+                table.release(addressKey);
+            }
+            refuse(channel, key);
+            return;
+        }
+
+        /* Count the connection for its address until the client disconnects */
+        if(table != null) {
+            client.addDisconnectListener(new DisconnectListener() {
+
+                @Override
+                public void onDisconnect(Client client) {
+                    table.release(addressKey);
+                }
+            });
+        }
+
+        /* Set the service type for the port the client connected to, by default the gateway */
+        ServiceType serviceType = serviceTypes.get(channel.socket().getLocalPort());
+        client.setServiceType(serviceType == null ? ServiceType.GATEWAY : serviceType);
+
+        /* Have interest op changes for the client applied by the reactor that accepted it */
+        client.setReactor(event.getReactor());
+
+        /* Start reading from the client, which wakes up the reactor to apply the interest */
+        client.updateInterestOps(SelectionKey.OP_READ, 0);
     }
 }
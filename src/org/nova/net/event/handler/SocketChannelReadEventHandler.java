@@ -22,20 +22,13 @@
 
 package org.nova.net.event.handler;
 
-import org.nova.core.Service;
 import org.nova.core.ServiceManager;
-import org.nova.event.Event;
 import org.nova.event.EventHandler;
 import org.nova.event.EventHandlerChainContext;
 import org.nova.net.Client;
+import org.nova.net.ClientInputHandler;
 import org.nova.net.ClientPool;
-import org.nova.net.ISAACCipher;
-import org.nova.net.Message;
-import org.nova.net.event.MessageDecodedEvent;
 import org.nova.net.event.SocketChannelEvent;
-import org.nova.net.packet.Packet;
-import org.nova.net.packet.codec.PacketDecoderState;
-import org.nova.net.packet.codec.PacketDecoderState.Stage;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -52,9 +45,9 @@ public final class SocketChannelReadEventHandler extends EventHandler<SocketChan
     private ClientPool clientPool;
 
     /**
-     * The service manager for this handler.
+     * The input handler to decode and dispatch the read bytes with.
      */
-    private ServiceManager serviceManager;
+    private ClientInputHandler inputHandler;
 
     /**
      * Constructs a new {@link SocketChannelReadEventHandler};
@@ -64,7 +57,8 @@ public final class SocketChannelReadEventHandler extends EventHandler<SocketChan
      */
     public SocketChannelReadEventHandler(ClientPool clientPool, ServiceManager serviceManager) {
         this.clientPool = clientPool;
-        this.serviceManager = serviceManager;
+
+        inputHandler = new ClientInputHandler(serviceManager);
     }
 
     @Override
@@ -78,83 +72,49 @@ public final class SocketChannelReadEventHandler extends EventHandler<SocketChan
         /* Get the client for the selection key */
         Client client = clientPool.getClient(event.getSelectionKey());
 
-        /* TODO: Figure out what we want to do if the client is null or even if this is possible */
+        /* The client may have already disconnected and released its slot */
+        if(client == null) {
+            return;
+        }
 
         /* Stop the context from propagating further */
         context.stop();
         
-        /* Read the bytes from the socket channel to the client input buffer */
-        try {
-            SocketChannel channel = event.getSource();
-
-            /* Read to the input buffer and rewind it afterward */
-            ByteBuffer buffer = client.getInputBuffer();
-            channel.read(buffer);
-            buffer.rewind();
-        } catch(IOException ex) {
-
-            /* Disconnect the client */
-            client.disconnect();
+        /* Acquire the input buffer, this may borrow a buffer from the arena */
+        ByteBuffer inputBuffer = client.acquireInputBuffer();
+        if(inputBuffer == null) {
             return;
         }
 
-        for(;;) {
+        try {
 
-            /* Check if the packet id needs to be determined */
-            PacketDecoderState state = client.getDecoderState();
-            if(state.getStage().equals(PacketDecoderState.Stage.AWAITING_ID)) {
+            /* Read the bytes from the socket channel to the client input buffer */
+            try {
+                SocketChannel channel = event.getSource();
 
-                /* Check if we can parse the packet id from the buffer */
-                ByteBuffer buffer = state.getBuffer();
-                if(buffer.remaining() < 1) {
-                    break;
+                /* Disconnect the client if the end of the stream has been reached */
+                int read = channel.read(inputBuffer);
+                if(read < 0) {
+                    client.disconnect();
+                    return;
                 }
 
-                int id = buffer.get() & 0xFF;
-
-                /* Check if the id needs to be deciphered */
-                if(state.useCipher()) {
-
-                    ISAACCipher cipher = state.getCipher();
-                    if(cipher == null) {
-                        throw new IllegalStateException("cipher cannot be null");
-                    }
-
-                    id = id - cipher.getNextValue() & 0xFF;
+                if(read > 0) {
+                    client.setLastReadTime(System.nanoTime());
                 }
+            } catch(IOException ex) {
 
-                /* Set the id and that we are now awaiting bytes */
-                state.setDecoderId(id);
-                state.setStage(PacketDecoderState.Stage.AWAITING_BYTES);
-            }
-
-            /* Decode the packet and check if it successfully decoded */
-            Packet packet = client.getPacketHandler().decode(state);
-            if(packet == null) {
-                break;
-            }
-
-            /* Get the buffer that was used to parse the packet and compact, and rewind it */
-            ByteBuffer buffer = state.getBuffer();
-            buffer.compact().rewind();
-
-            /* Alert that we are now awaiting for an id again */
-            state.setStage(Stage.AWAITING_ID);
-
-            /* Decode the message from the provided packet */
-            Message decodedMessage = client.getMessageHandler().decode(packet);
-
-            /* Do not go any further if the decoded message is null */
-            if(decodedMessage == null) {
+                /* Disconnect the client */
+                client.disconnect();
                 return;
             }
 
-            /* Get the service that the client is currently being handled by */
-            Service service = serviceManager.get(client.getServiceType());
+            /* Decode and dispatch the read bytes */
+            inputHandler.handleInput(client, inputBuffer);
+        } finally {
 
-            /* Dispatch the message event */
-            Event messageEvent = new MessageDecodedEvent(client, decodedMessage);
-            service.getDispatcher().handleEvent(messageEvent);
+            /* Release the input buffer, which gives it back to the arena if it is empty */
+            client.releaseInputBuffer();
         }
     }
 }
@@ -26,10 +26,10 @@ import org.nova.event.EventHandler;
 import org.nova.event.EventHandlerChainContext;
 import org.nova.net.Client;
 import org.nova.net.ClientPool;
+import org.nova.net.buffer.OutputQueue;
 import org.nova.net.event.SocketChannelEvent;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 
 /**
@@ -43,12 +43,35 @@ public final class SocketChannelWriteEventHandler extends EventHandler<SocketCha
     private ClientPool clientPool;
 
     /**
-     * Constructs a new {@link SocketChannelReadEventHandler};
+     * The maximum amount of output segments to write for each write event.
+     */
+    private int maxSegments;
+
+    /**
+     * The amount of bytes after which no more output segments are written for a write event.
+     */
+    private int maxBytes;
+
+    /**
+     * Constructs a new {@link SocketChannelWriteEventHandler};
      *
      * @param clientPool    The client pool to grab clients from.
      */
     public SocketChannelWriteEventHandler(ClientPool clientPool) {
+        this(clientPool, OutputQueue.DEFAULT_MAX_FLUSH_SEGMENTS, OutputQueue.DEFAULT_MAX_FLUSH_BYTES);
+    }
+
+    /**
+     * Constructs a new {@link SocketChannelWriteEventHandler};
+     *
+     * @param clientPool    The client pool to grab clients from.
+     * @param maxSegments   The maximum amount of output segments to write for each write event.
+     * @param maxBytes      The amount of bytes after which no more output segments are written for a write event.
+     */
+    public SocketChannelWriteEventHandler(ClientPool clientPool, int maxSegments, int maxBytes) {
         this.clientPool = clientPool;
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
     }
 
     @Override
@@ -62,16 +85,18 @@ public final class SocketChannelWriteEventHandler extends EventHandler<SocketCha
         /* Get the client for the selection key */
         Client client = clientPool.getClient(event.getSelectionKey());
 
-        /* TODO: Figure out what we want to do if the client is null or even if this is possible */
+        /* The client may have already disconnected and released its slot */
+        if(client == null) {
+            return;
+        }
 
         /* Stop the context from propagating further */
         context.stop();
 
-        /* Write the output buffer to the socket channel */
-        ByteBuffer outputBuffer = client.getOutputBuffer();
-
+        /* Flush the queued output segments to the socket channel with a single gathering write */
+        boolean pending;
         try {
-            event.getSource().write(outputBuffer);
+            pending = client.flush(maxSegments, maxBytes);
         } catch(IOException ex) {
 
             /* Something went wrong and we need to disconnect the client */
@@ -79,13 +104,9 @@ public final class SocketChannelWriteEventHandler extends EventHandler<SocketCha
             return;
         }
 
-        /* Compact the output buffer */
-        outputBuffer.compact();
-
         /* Remove the write interest if there are no longer any messages/bytes to write */
-        if(!outputBuffer.hasRemaining()) {
-            SelectionKey key = event.getSelectionKey();
-            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if(!pending) {
+            client.updateInterestOps(0, SelectionKey.OP_WRITE);
         }
     }
 }
@@ -58,52 +58,133 @@ public final class NumericBlock extends PacketBlock<Number> {
 
     @Override
     public void encode(ByteBuffer buffer) {
+        write(buffer, type, getValue().longValue());
+    }
 
-        /* Put the value into the buffer */
+    @Override
+    public void decode(ByteBuffer buffer) {
+        setValue(toNumber(read(buffer, type), type));
+    }
+
+    /**
+     * Reads a numeric value from a buffer.
+     *
+     * @param buffer    The buffer to read the value from.
+     * @param type      The numeric type of the value.
+     * @return          The value, sign extended to a long.
+     */
+    public static long read(ByteBuffer buffer, NumericType type) {
         switch(type) {
 
             case INT8:
-                buffer.put(value.byteValue());
-                break;
+                return buffer.get();
 
             case INT16:
-                buffer.putShort(value.shortValue());
-                break;
+                return buffer.getShort();
+
+            case INT24:
+                return buffer.getShort() << 8 | buffer.get() & 0xFF;
 
             case INT32:
-                buffer.putInt(value.intValue());
-                break;
+                return buffer.getInt();
 
             case INT64:
-                buffer.putLong(value.longValue());
-                break;
+                return buffer.getLong();
+
+            default:
+                throw new RuntimeException("Unhandled numeric type");
         }
     }
 
-    @Override
-    public void decode(ByteBuffer buffer) {
+    /**
+     * Reads a numeric value from a buffer at an absolute index, without changing the position of the buffer.
+     *
+     * @param buffer    The buffer to read the value from.
+     * @param index     The index of the value in the buffer.
+     * @param type      The numeric type of the value.
+     * @return          The value, sign extended to a long.
+     */
+    public static long read(ByteBuffer buffer, int index, NumericType type) {
+        switch(type) {
 
-        /* Read the value from the buffer */
+            case INT8:
+                return buffer.get(index);
+
+            case INT16:
+                return buffer.getShort(index);
+
+            case INT24:
+                return buffer.getShort(index) << 8 | buffer.get(index + 2) & 0xFF;
+
+            case INT32:
+                return buffer.getInt(index);
+
+            case INT64:
+                return buffer.getLong(index);
+
+            default:
+                throw new RuntimeException("Unhandled numeric type");
+        }
+    }
+
+    /**
+     * Writes a numeric value to a buffer.
+     *
+     * @param buffer    The buffer to write the value to.
+     * @param type      The numeric type of the value.
+     * @param value     The value to write.
+     */
+    public static void write(ByteBuffer buffer, NumericType type, long value) {
         switch(type) {
 
             case INT8:
-                value = buffer.get();
+                buffer.put((byte) value);
                 break;
 
             case INT16:
-                value = buffer.getShort();
+                buffer.putShort((short) value);
+                break;
+
+            case INT24:
+                buffer.putShort((short) (value >> 8));
+                buffer.put((byte) value);
                 break;
 
             case INT32:
-                value = buffer.getInt();
+                buffer.putInt((int) value);
                 break;
 
             case INT64:
-                value = buffer.getLong();
+                buffer.putLong(value);
                 break;
         }
     }
 
+    /**
+     * Converts a value to the number class used for a numeric type.
+     *
+     * @param value The value to convert.
+     * @param type  The numeric type of the value.
+     * @return      The converted number.
+     */
+    public static Number toNumber(long value, NumericType type) {
+        switch(type) {
+
+            case INT8:
+                return (byte) value;
+
+            case INT16:
+                return (short) value;
+
+            case INT24:
+            case INT32:
+                return (int) value;
+
+            default:
+                return value;
+        }
+    }
+
     /**
      * Gets the numeric type for this block.
      *
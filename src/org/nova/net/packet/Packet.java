@@ -22,28 +22,106 @@
 
 package org.nova.net.packet;
 
+import org.nova.net.packet.PacketVariable.VariableType;
+import org.nova.net.packet.transformers.NumericTransformer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          The values of a packet are stored by the slots of its layout. Numeric values are stored as longs
+ *          and strings in a separate array, which is only created if the layout contains strings. Blocks are
+ *          only created when first requested and are kept for each slot. A requested block is bound to its
+ *          slot, so it reads the value from the slot and writes any change to its value back to the slot.
+ *
+ *          A packet can also be a view over the buffer that it was decoded from. Views do not store any
+ *          values, each value is read from the buffer when it is requested. A view is only valid until the
+ *          buffer is changed, which is when the next packet is decoded, and cannot be written to.
  */
 public final class Packet {
 
     /**
-     * The name of the packet.
+     * The layout of the packet.
+     */
+    private PacketLayout layout;
+
+    /**
+     * The numeric values of the packet, indexed by slot.
+     */
+    private long[] values;
+
+    /**
+     * The string values of the packet, indexed by slot.
+     */
+    private String[] strings;
+
+    /**
+     * The buffer that the values of a view are read from, null if this packet is not a view.
+     */
+    private ByteBuffer source;
+
+    /**
+     * The offset of the packet in the buffer of a view.
+     */
+    private int sourceOffset;
+
+    /**
+     * The offset of each slot from the offset of the packet in the buffer of a view,
+     * or -1 if the slot is not in the buffer.
      */
-    private String name;
+    private int[] slotOffsets;
 
     /**
-     * The size of the packet.
+     * The transformer to decode each slot of a view with, null if the slot is not transformed.
      */
-    private int size;
+    private NumericTransformer[] slotTransformers;
 
     /**
-     * The packet blocks for this packet.
+     * The block bound to each slot, created when the block for the slot is first requested.
      */
-    private Map<String, PacketBlock> packetBlocks;
-    
+    private PacketBlock[] blocks;
+
+    /**
+     * Constructs a new {@link Packet}; as a view which is yet to be wrapped around a buffer.
+     */
+    private Packet() {}
+
+    /**
+     * Creates a new packet to be used as a view.
+     *
+     * @return  The created view.
+     */
+    public static Packet createView() {
+        return new Packet();
+    }
+
+    /**
+     * Constructs a new {@link Packet};
+     *
+     * @param layout    The layout of the packet.
+     */
+    public Packet(PacketLayout layout) {
+        this.layout = layout;
+
+        values = new long[layout.getSlotCount()];
+
+        /* Strings default to being empty, as they did for string blocks */
+        if(layout.containsStrings()) {
+            strings = new String[values.length];
+            for(int slot = 0; slot < values.length; slot++) {
+                if(!layout.isNumeric(slot)) {
+                    strings[slot] = "";
+                }
+            }
+        }
+    }
+
     /**
      * Constructs a new {@link Packet};
      *
@@ -52,9 +130,96 @@ public final class Packet {
      * @param packetBlocks  The packet blocks for the packet.
      */
     public Packet(String name, int size, Map<String, PacketBlock> packetBlocks) {
-        this.name = name;
-        this.size = size;
-        this.packetBlocks = packetBlocks;
+        this(createLayout(name, size, packetBlocks));
+
+        /* Copy the value of each block into its slot */
+        for(Map.Entry<String, PacketBlock> entry : packetBlocks.entrySet()) {
+            putBlock(layout.getSlot(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Creates a layout for a map of packet blocks.
+     *
+     * @param name          The name of the packet.
+     * @param size          The size of the packet.
+     * @param packetBlocks  The packet blocks for the packet.
+     * @return              The created layout.
+     */
+    private static PacketLayout createLayout(String name, int size, Map<String, PacketBlock> packetBlocks) {
+        List<PacketVariable> variables = new ArrayList<PacketVariable>(packetBlocks.size());
+        for(Map.Entry<String, PacketBlock> entry : packetBlocks.entrySet()) {
+            PacketBlock block = entry.getValue();
+
+            VariableType type = VariableType.STRING;
+            if(block instanceof NumericBlock) {
+                type = VariableType.valueOf(((NumericBlock) block).getType().name());
+            }
+
+            variables.add(new PacketVariable(entry.getKey(), type));
+        }
+        return new PacketLayout(name, size, variables);
+    }
+
+    /**
+     * Wraps this view around a packet in a buffer. Only numeric slots can be read from a view.
+     *
+     * @param layout        The layout of the packet.
+     * @param buffer        The buffer that holds the packet.
+     * @param offset        The offset of the packet in the buffer.
+     * @param offsets       The offset of each slot from the offset of the packet, -1 if the slot is not in the buffer.
+     * @param transformers  The transformer for each slot, null if the slot is not transformed.
+     */
+    public void wrap(PacketLayout layout, ByteBuffer buffer, int offset, int[] offsets, NumericTransformer[] transformers) {
+        if(values != null) {
+            throw new IllegalStateException("packet is not a view");
+        }
+
+        /* The blocks of the last layout are bound to slots which may no longer exist */
+        if(this.layout != layout) {
+            blocks = null;
+        }
+
+        this.layout = layout;
+        source = buffer;
+        sourceOffset = offset;
+        slotOffsets = offsets;
+        slotTransformers = transformers;
+    }
+
+    /**
+     * Gets if this packet is a view over the buffer it was decoded from.
+     *
+     * @return  If this packet is a view.
+     */
+    public boolean isView() {
+        return values == null;
+    }
+
+    /**
+     * Copies this packet, a copy of a view stores its own values and remains valid after the view is not.
+     *
+     * @return  The copied packet.
+     */
+    public Packet copy() {
+        Packet packet = new Packet(layout);
+        for(int slot = 0; slot < layout.getSlotCount(); slot++) {
+            if(layout.isNumeric(slot)) {
+                packet.values[slot] = getLong(slot);
+            } else {
+                packet.strings[slot] = strings[slot];
+            }
+        }
+        return packet;
+    }
+
+    /**
+     * Checks that the values of this packet can be written to.
+     */
+    private void checkWritable() {
+        if(values == null) {
+            throw new IllegalStateException("packet is a view");
+        }
     }
 
     /**
@@ -63,7 +228,7 @@ public final class Packet {
      * @return  The size.
      */
     public int getSize() {
-        return size;
+        return layout.getPacketSize();
     }
 
     /**
@@ -72,7 +237,159 @@ public final class Packet {
      * @return  The name.
      */
     public String getName() {
-        return name;
+        return layout.getPacketName();
+    }
+
+    /**
+     * Gets the layout of the packet.
+     *
+     * @return  The layout.
+     */
+    public PacketLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the slot for a variable of this packet.
+     *
+     * @param name  The name of the variable.
+     * @return      The slot, or -1 if the packet does not contain the variable.
+     */
+    public int getSlot(String name) {
+        return layout.getSlot(name);
+    }
+
+    /**
+     * Gets the numeric value in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The value.
+     */
+    public long getLong(int slot) {
+        if(values != null) {
+            return values[slot];
+        }
+
+        /* Read the value from the buffer of the view */
+        int offset = slotOffsets[slot];
+        if(offset < 0) {
+            return 0L;
+        }
+
+        NumericType type = layout.getNumericType(slot);
+
+        NumericTransformer transformer = slotTransformers[slot];
+        if(transformer != null) {
+            return transformer.read(source, sourceOffset + offset, type);
+        }
+        return NumericBlock.read(source, sourceOffset + offset, type);
+    }
+
+    /**
+     * Gets the numeric value in a slot as an integer.
+     *
+     * @param slot  The slot.
+     * @return      The value.
+     */
+    public int getInt(int slot) {
+        return (int) getLong(slot);
+    }
+
+    /**
+     * Sets the numeric value in a slot.
+     *
+     * @param slot  The slot.
+     * @param value The value.
+     */
+    public void setLong(int slot, long value) {
+        checkWritable();
+        values[slot] = value;
+    }
+
+    /**
+     * Gets the string value in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The value.
+     */
+    public String getString(int slot) {
+        if(strings == null) {
+            throw new IllegalArgumentException("slot does not hold a string");
+        }
+        return strings[slot];
+    }
+
+    /**
+     * Sets the string value in a slot.
+     *
+     * @param slot  The slot.
+     * @param value The value.
+     */
+    public void setString(int slot, String value) {
+        checkWritable();
+
+        if(strings == null || layout.isNumeric(slot)) {
+            throw new IllegalArgumentException("slot does not hold a string");
+        }
+        strings[slot] = value;
+    }
+
+    /**
+     * Decodes the value in a slot from a buffer.
+     *
+     * @param slot      The slot.
+     * @param buffer    The buffer to decode the value from.
+     */
+    public void decodeSlot(int slot, ByteBuffer buffer) {
+        checkWritable();
+
+        NumericType type = layout.getNumericType(slot);
+        if(type != null) {
+            values[slot] = NumericBlock.read(buffer, type);
+            return;
+        }
+
+        /* Read each of the characters until the terminator */
+        StringBuilder builder = new StringBuilder();
+        char val;
+        while((val = (char) buffer.get()) != '\0') {
+            builder.append(val);
+        }
+        strings[slot] = builder.toString();
+    }
+
+    /**
+     * Encodes the value in a slot to a buffer.
+     *
+     * @param slot      The slot.
+     * @param buffer    The buffer to encode the value to.
+     */
+    public void encodeSlot(int slot, ByteBuffer buffer) {
+        NumericType type = layout.getNumericType(slot);
+        if(type != null) {
+            NumericBlock.write(buffer, type, getLong(slot));
+            return;
+        }
+
+        String value = strings[slot];
+        for(int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+        buffer.put((byte) '\0');
+    }
+
+    /**
+     * Gets the encoded length of the value in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The length in bytes.
+     */
+    public int getSlotLength(int slot) {
+        NumericType type = layout.getNumericType(slot);
+        if(type != null) {
+            return NumericType.getByteLength(type);
+        }
+        return strings[slot].length() + 1;
     }
 
     /**
@@ -82,16 +399,97 @@ public final class Packet {
      * @return      If this packet contains a specific block.
      */
     public boolean containsBlock(String name) {
-        return packetBlocks.containsKey(name);
+        return layout.containsSlot(name);
     }
 
     /**
-     * Gets a block for this packet.
+     * Gets a block for this packet. The block is bound to the slot for the block, so changes
+     * to the block are written to this packet.
      *
      * @param name  The name of the block.
-     * @return      The block for the packet.
+     * @return      The block for the packet, or null if the packet does not contain the block.
      */
     public PacketBlock getBlock(String name) {
-        return packetBlocks.get(name);
+        int slot = layout.getSlot(name);
+        if(slot == -1) {
+            return null;
+        }
+        return getBlock(slot);
+    }
+
+    /**
+     * Gets a block for a slot of this packet. The block is created the first time it is requested
+     * and is bound to the slot, so changes to the block are written to this packet.
+     *
+     * @param slot  The slot.
+     * @return      The block for the slot.
+     */
+    public PacketBlock getBlock(int slot) {
+        if(blocks == null) {
+            blocks = new PacketBlock[layout.getSlotCount()];
+        }
+
+        PacketBlock block = blocks[slot];
+        if(block == null) {
+            block = copyBlock(slot);
+            block.bind(this, slot);
+            blocks[slot] = block;
+        }
+        return block;
+    }
+
+    /**
+     * Creates a block holding a copy of the value in a slot of this packet. Changes to the
+     * block are not reflected in this packet until it is put back.
+     *
+     * @param slot  The slot.
+     * @return      The created block.
+     */
+    public PacketBlock copyBlock(int slot) {
+        NumericType type = layout.getNumericType(slot);
+        if(type != null) {
+            return new NumericBlock(NumericBlock.toNumber(getLong(slot), type), type);
+        }
+        return new StringBlock(getString(slot));
+    }
+
+    /**
+     * Puts the value of a block into a slot of this packet.
+     *
+     * @param slot  The slot.
+     * @param block The block to put the value of.
+     */
+    public void putBlock(int slot, PacketBlock block) {
+        setSlotValue(slot, block.getValue());
+    }
+
+    /**
+     * Gets the value in a slot of this packet, numeric values are boxed as the type of the slot.
+     *
+     * @param slot  The slot.
+     * @return      The value.
+     */
+    Object getSlotValue(int slot) {
+        NumericType type = layout.getNumericType(slot);
+        if(type != null) {
+            return NumericBlock.toNumber(getLong(slot), type);
+        }
+        return getString(slot);
+    }
+
+    /**
+     * Sets the value in a slot of this packet.
+     *
+     * @param slot  The slot.
+     * @param value The value, a number for numeric slots and a string otherwise.
+     */
+    void setSlotValue(int slot, Object value) {
+        checkWritable();
+
+        if(layout.isNumeric(slot)) {
+            values[slot] = ((Number) value).longValue();
+        } else {
+            setString(slot, (String) value);
+        }
     }
-}
\ No newline at end of file
+}
@@ -28,6 +28,12 @@ import java.nio.ByteBuffer;
  * Created by Hadyn Richard
  *
  * Represents a stateful variable block in a packet.
+ *
+ * Notes:
+ *
+ *          A block requested from a packet is bound to the slot of the packet that holds its value. A bound block
+ *          reads its value from the slot and writes each change to its value back to the slot, so changes made
+ *          through the block are seen by the packet. Blocks which are created directly hold their own value.
  */
 public abstract class PacketBlock<T> {
 
@@ -36,6 +42,16 @@ public abstract class PacketBlock<T> {
      */
     protected T value;
 
+    /**
+     * The packet which holds the value of the block, or null if the block holds its own value.
+     */
+    private Packet packet;
+
+    /**
+     * The slot of the packet which holds the value of the block.
+     */
+    private int slot;
+
     /**
      * Constructs a new {@link PacketBlock};
      * 
@@ -45,6 +61,17 @@ public abstract class PacketBlock<T> {
         this.value = value;
     }
 
+    /**
+     * Binds this block to a slot of a packet, so that its value is read from and written to the slot.
+     *
+     * @param packet    The packet which holds the value of the block.
+     * @param slot      The slot of the packet.
+     */
+    final void bind(Packet packet, int slot) {
+        this.packet = packet;
+        this.slot = slot;
+    }
+
     /**
      * Encodes the block to a byte buffer.
      *
@@ -72,7 +99,7 @@ public abstract class PacketBlock<T> {
      * @param transformer The transformer to use to encode the value of the block.
      */
     public final void encodeValue(Transformer<T, PacketBlock<T>> transformer) {
-        value = transformer.encode(this);
+        setValue(transformer.encode(this));
     }
 
     /**
@@ -81,15 +108,31 @@ public abstract class PacketBlock<T> {
      * @param transformer   The transformer to use to decode the value of the black.
      */
     public final void decodeValue(Transformer<T, PacketBlock<T>> transformer) {
-        value = transformer.decode(this);
+        setValue(transformer.decode(this));
+    }
+
+    /**
+     * Sets the value of the block, writing it to the slot of the packet if the block is bound.
+     *
+     * @param value The value.
+     */
+    protected final void setValue(T value) {
+        if(packet != null) {
+            packet.setSlotValue(slot, value);
+        }
+        this.value = value;
     }
 
     /**
-     * Gets the value of the block.
+     * Gets the value of the block, reading it from the slot of the packet if the block is bound.
      *
      * @return  The value.
      */
+    @SuppressWarnings("unchecked")
     public final T getValue() {
+        if(packet != null) {
+            value = (T) packet.getSlotValue(slot);
+        }
         return value;
     }
 }
@@ -21,16 +21,30 @@
  */
 package org.nova.net.packet;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.nova.net.packet.PacketVariable.VariableType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by Hadyn Richard
  *
  * Used to help build and create packets.
+ *
+ * Notes:
+ *
+ *          The layout of the last packet built for each name is cached and reused while the packets built
+ *          for the name keep the same size and variables, so that the codecs keep their bindings to it.
  */
 public final class PacketBuilder {
 
+    /**
+     * The map of packet names to the layout of the last packet built with the name.
+     */
+    private static final ConcurrentMap<String, PacketLayout> layouts = new ConcurrentHashMap<String, PacketLayout>();
+
     /**
      * The name of the packet to build.
      */
@@ -42,9 +56,14 @@ public final class PacketBuilder {
     private int size;
 
     /**
-     * The packet blocks for the packet we are building.
+     * The variables for the packet we are building.
      */
-    private Map<String, PacketBlock> blocks;
+    private List<PacketVariable> variables;
+
+    /**
+     * The value for each of the variables.
+     */
+    private List<Object> values;
 
     /**
      * Constructs a new {@link PacketBuilder};
@@ -52,7 +71,8 @@ public final class PacketBuilder {
      * @param name  The name of the packet to build.
      */
     public PacketBuilder(String name, int size) {
-        blocks = new HashMap<String, PacketBlock>();
+        variables = new ArrayList<PacketVariable>();
+        values = new ArrayList<Object>();
 
         this.name = name;
         this.size = size;
@@ -65,8 +85,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt8(String name) {
-        NumericBlock block = new NumericBlock(NumericType.INT8);
-        blocks.put(name, block);
+        put(name, VariableType.INT8, 0);
         return this;
     }
 
@@ -78,8 +97,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt8(String name, byte b) {
-        NumericBlock block = new NumericBlock(b, NumericType.INT8);
-        blocks.put(name, block);
+        put(name, VariableType.INT8, b);
         return this;
     }
 
@@ -90,8 +108,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt16(String name) {
-        NumericBlock block = new NumericBlock(NumericType.INT16);
-        blocks.put(name, block);
+        put(name, VariableType.INT16, 0);
         return this;
     }
 
@@ -103,8 +120,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt16(String name, short s) {
-        NumericBlock block = new NumericBlock(s, NumericType.INT16);
-        blocks.put(name, block);
+        put(name, VariableType.INT16, s);
         return this;
     }
 
@@ -115,8 +131,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt24(String name) {
-        NumericBlock block = new NumericBlock(NumericType.INT24);
-        blocks.put(name, block);
+        put(name, VariableType.INT24, 0);
         return this;
     }
 
@@ -127,8 +142,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt24(String name, int i) {
-        NumericBlock block = new NumericBlock(i, NumericType.INT24);
-        blocks.put(name, block);
+        put(name, VariableType.INT24, i);
         return this;
     }
 
@@ -139,8 +153,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt32(String name) {
-        NumericBlock block = new NumericBlock(NumericType.INT32);
-        blocks.put(name, block);
+        put(name, VariableType.INT32, 0);
         return this;
     }
 
@@ -152,8 +165,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt32(String name, int i) {
-        NumericBlock block = new NumericBlock(i, NumericType.INT32);
-        blocks.put(name, block);
+        put(name, VariableType.INT32, i);
         return this;
     }
 
@@ -164,8 +176,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt64(String name) {
-        NumericBlock block = new NumericBlock(NumericType.INT64);
-        blocks.put(name, block);
+        put(name, VariableType.INT64, 0);
         return this;
     }
 
@@ -177,8 +188,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putInt64(String name, long l) {
-        NumericBlock block = new NumericBlock(l, NumericType.INT64);
-        blocks.put(name, block);
+        put(name, VariableType.INT64, l);
         return this;
     }
 
@@ -189,8 +199,7 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putString(String name) {
-        StringBlock block = new StringBlock();
-        blocks.put(name, block);
+        put(name, VariableType.STRING, "");
         return this;
     }
 
@@ -202,17 +211,63 @@ public final class PacketBuilder {
      * @return      This instance of the packet builder, for chaining.
      */
     public PacketBuilder putString(String name, String value) {
-        StringBlock block = new StringBlock(value);
-        blocks.put(name, block);
+        put(name, VariableType.STRING, value);
         return this;
     }
 
+    /**
+     * Puts a variable into the packet, replacing the value of the variable if it has already been put.
+     *
+     * @param name  The name of the variable.
+     * @param type  The type of the variable.
+     * @param value The value of the variable.
+     */
+    private void put(String name, VariableType type, Object value) {
+        for(int i = 0; i < variables.size(); i++) {
+            if(variables.get(i).getName().equals(name)) {
+                variables.set(i, new PacketVariable(name, type));
+                values.set(i, value);
+                return;
+            }
+        }
+
+        variables.add(new PacketVariable(name, type));
+        values.add(value);
+    }
+
     /**
      * Converts the information provided by this builder to a packet.
      *
      * @return The created packet.
      */
     public Packet toPacket() {
-        return new Packet(name, size, blocks);
+        Packet packet = getLayout().create();
+
+        /* Set the value of each of the slots */
+        for(int slot = 0; slot < values.size(); slot++) {
+            Object value = values.get(slot);
+            if(value instanceof Number) {
+                packet.setLong(slot, ((Number) value).longValue());
+            } else {
+                packet.setString(slot, (String) value);
+            }
+        }
+
+        return packet;
+    }
+
+    /**
+     * Gets the cached layout for the packet, creating and caching a new layout if the
+     * packet does not match the cached one.
+     *
+     * @return  The layout.
+     */
+    private PacketLayout getLayout() {
+        PacketLayout layout = layouts.get(name);
+        if(layout == null || !layout.matches(size, variables)) {
+            layout = new PacketLayout(name, size, variables);
+            layouts.put(name, layout);
+        }
+        return layout;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net.packet;
+
+import org.nova.net.packet.PacketVariable.VariableType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          A layout is compiled once for each packet definition, and gives each of its variables an integer
+ *          slot. Packets created from a layout store their numeric values in a single long array indexed by
+ *          slot, so that names only have to be resolved when a codec or script is registered.
+ */
+public final class PacketLayout {
+
+    /**
+     * The name of the packets created from this layout.
+     */
+    private String name;
+
+    /**
+     * The size of the packets created from this layout.
+     */
+    private int size;
+
+    /**
+     * The name of the variable in each slot.
+     */
+    private String[] names;
+
+    /**
+     * The type of the variable in each slot.
+     */
+    private VariableType[] types;
+
+    /**
+     * The numeric type of the variable in each slot, null for string slots.
+     */
+    private NumericType[] numericTypes;
+
+    /**
+     * The map of variable names to their slots.
+     */
+    private Map<String, Integer> slots;
+
+    /**
+     * The flag for if any of the slots hold a string.
+     */
+    private boolean containsStrings;
+
+    /**
+     * Constructs a new {@link PacketLayout};
+     *
+     * @param name      The name of the packets created from this layout.
+     * @param size      The size of the packets created from this layout.
+     * @param variables The variables of the packet, in slot order.
+     */
+    public PacketLayout(String name, int size, List<PacketVariable> variables) {
+        this.name = name;
+        this.size = size;
+
+        int count = variables.size();
+        names = new String[count];
+        types = new VariableType[count];
+        numericTypes = new NumericType[count];
+        slots = new HashMap<String, Integer>();
+
+        /* Assign each of the variables the next slot */
+        int slot = 0;
+        for(PacketVariable variable : variables) {
+
+            /* Check for name collisions */
+            if(slots.containsKey(variable.getName())) {
+                throw new IllegalArgumentException("variable with name '" + variable.getName() + "' already exists");
+            }
+
+            names[slot] = variable.getName();
+            types[slot] = variable.getType();
+            numericTypes[slot] = getNumericType(variable.getType());
+            slots.put(variable.getName(), slot);
+
+            if(variable.getType() == VariableType.STRING) {
+                containsStrings = true;
+            }
+
+            slot++;
+        }
+    }
+
+    /**
+     * Creates a new packet from this layout, with each numeric value set to zero
+     * and each string value set to an empty string.
+     *
+     * @return  The created packet.
+     */
+    public Packet create() {
+        return new Packet(this);
+    }
+
+    /**
+     * Gets if this layout has the same size and variables, in the same slot order.
+     *
+     * @param size      The size of the packets.
+     * @param variables The variables of the packet, in slot order.
+     * @return          If the layout matches.
+     */
+    public boolean matches(int size, List<PacketVariable> variables) {
+        if(this.size != size || names.length != variables.size()) {
+            return false;
+        }
+
+        for(int slot = 0; slot < names.length; slot++) {
+            PacketVariable variable = variables.get(slot);
+            if(types[slot] != variable.getType() || !names[slot].equals(variable.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the slot for a variable.
+     *
+     * @param name  The name of the variable.
+     * @return      The slot, or -1 if there is no variable with the name.
+     */
+    public int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Gets if this layout contains a variable.
+     *
+     * @param name  The name of the variable.
+     * @return      If this layout contains the variable.
+     */
+    public boolean containsSlot(String name) {
+        return slots.containsKey(name);
+    }
+
+    /**
+     * Gets the amount of slots in this layout.
+     *
+     * @return  The amount of slots.
+     */
+    public int getSlotCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of the variable in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The name of the variable.
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Gets the type of the variable in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The type of the variable.
+     */
+    public VariableType getType(int slot) {
+        return types[slot];
+    }
+
+    /**
+     * Gets the numeric type of the variable in a slot.
+     *
+     * @param slot  The slot.
+     * @return      The numeric type, or null if the slot holds a string.
+     */
+    public NumericType getNumericType(int slot) {
+        return numericTypes[slot];
+    }
+
+    /**
+     * Gets if the variable in a slot is numeric.
+     *
+     * @param slot  The slot.
+     * @return      If the variable is numeric.
+     */
+    public boolean isNumeric(int slot) {
+        return numericTypes[slot] != null;
+    }
+
+    /**
+     * Gets if any of the slots in this layout hold a string.
+     *
+     * @return  If this layout contains strings.
+     */
+    public boolean containsStrings() {
+        return containsStrings;
+    }
+
+    /**
+     * Gets the name of the packets created from this layout.
+     *
+     * @return  The name.
+     */
+    public String getPacketName() {
+        return name;
+    }
+
+    /**
+     * Gets the size of the packets created from this layout.
+     *
+     * @return  The size.
+     */
+    public int getPacketSize() {
+        return size;
+    }
+
+    /**
+     * Gets the numeric type for a variable type.
+     *
+     * @param type  The variable type.
+     * @return      The numeric type, or null if the variable type is not numeric.
+     */
+    public static NumericType getNumericType(VariableType type) {
+        switch(type) {
+
+            case INT8:
+                return NumericType.INT8;
+
+            case INT16:
+                return NumericType.INT16;
+
+            case INT24:
+                return NumericType.INT24;
+
+            case INT32:
+                return NumericType.INT32;
+
+            case INT64:
+                return NumericType.INT64;
+
+            default:
+                return null;
+        }
+    }
+}
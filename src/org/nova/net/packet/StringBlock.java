@@ -36,11 +36,6 @@ import java.nio.ByteBuffer;
  */
 public final class StringBlock extends PacketBlock<String> {
 
-    /**
-     * The value of the string block.
-     */
-    private String value;
-
     /**
      * The character used to terminate strings.
      */
@@ -77,7 +72,7 @@ public final class StringBlock extends PacketBlock<String> {
 
     @Override
     public void encode(ByteBuffer buffer) {
-        buffer.put(value.getBytes());
+        buffer.put(getValue().getBytes());
         buffer.put((byte) terminatorChar);                // Null character terminated
     }
 
@@ -91,7 +86,7 @@ public final class StringBlock extends PacketBlock<String> {
             builder.append(val);
         }
 
-        value = builder.toString();
+        setValue(builder.toString());
     }
 
     @Override
@@ -22,19 +22,91 @@
 
 package org.nova.net.packet.codec;
 
+import org.nova.net.packet.NumericType;
 import org.nova.net.packet.Packet;
+import org.nova.net.packet.PacketLayout;
+import org.nova.net.packet.PacketVariable.VariableType;
 import org.nova.net.packet.Transformer;
+import org.nova.net.packet.transformers.NumericTransformer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          The names of the blocks are resolved to the slots of a packet layout when the first packet with
+ *          the layout is coded, and the resolved binding is reused for each of the following packets.
+ *
+ *          A program is generated for the types of the blocks of the first binding, and is used by each of the
+ *          bindings with the same types. Bindings with other types interpret their blocks.
  */
 public abstract class PacketCodec {
 
+    /**
+     * The blocks of a codec resolved to the slots of a packet layout.
+     */
+    protected static final class Binding {
+
+        /**
+         * The layout that the blocks were resolved for.
+         */
+        protected PacketLayout layout;
+
+        /**
+         * The slot for each block, in coding order.
+         */
+        protected int[] slots;
+
+        /**
+         * The transformer for each block, null if the block is not transformed.
+         */
+        protected Transformer[] transformers;
+
+        /**
+         * The offset of each slot in the coded bytes, -1 if the slot is not coded. This is
+         * null if the blocks cannot be read from a view.
+         */
+        protected int[] viewOffsets;
+
+        /**
+         * The numeric transformer for each slot, null if the slot is not transformed.
+         */
+        protected NumericTransformer[] viewTransformers;
+
+        /**
+         * The length of the coded bytes, if the blocks can be read from a view.
+         */
+        protected int viewLength;
+
+        /**
+         * The program generated to code the blocks, null if the blocks are interpreted.
+         */
+        protected PacketCodecProgram program;
+    }
+
+    /**
+     * The program generated for the types of the blocks.
+     */
+    private static final class GeneratedProgram {
+
+        /**
+         * The type of each block that the program was generated for.
+         */
+        private VariableType[] types;
+
+        /**
+         * The program, null if a program could not be generated for the blocks.
+         */
+        private PacketCodecProgram program;
+    }
+
     /**
      * The map of transformers to use with specified blocks.
      */
@@ -45,6 +117,16 @@ public abstract class PacketCodec {
      */
     protected List<String> blocks;
 
+    /**
+     * The binding for the layout of the last coded packet.
+     */
+    private volatile Binding binding;
+
+    /**
+     * The program generated for the blocks.
+     */
+    private volatile GeneratedProgram generatedProgram;
+
     /**
      * Constructs a new {@link PacketCodec};
      *
@@ -63,6 +145,8 @@ public abstract class PacketCodec {
      */
     public void addBlock(String name) {
         blocks.add(name);
+        binding = null;
+        generatedProgram = null;
     }
 
     /**
@@ -73,6 +157,8 @@ public abstract class PacketCodec {
      */
     public void addTransformer(String name, Transformer transformer) {
         transformers.put(name, transformer);
+        binding = null;
+        generatedProgram = null;
     }
 
     /**
@@ -82,11 +168,160 @@ public abstract class PacketCodec {
      * @return          If the packet contains the required blocks.
      */
     public boolean containsRequiredBlocks(Packet packet) {
-        for(String name : blocks) {
-            if(!packet.containsBlock(name)) {
-                return false;
+        return getBinding(packet.getLayout()) != null;
+    }
+
+    /**
+     * Gets the binding of the blocks to the slots of a packet layout.
+     *
+     * @param layout    The layout to get the binding for.
+     * @return          The binding, or null if the layout does not contain each of the blocks.
+     */
+    protected Binding getBinding(PacketLayout layout) {
+        Binding binding = this.binding;
+        if(binding != null && binding.layout == layout) {
+            return binding;
+        }
+
+        binding = new Binding();
+        binding.layout = layout;
+        binding.slots = new int[blocks.size()];
+        binding.transformers = new Transformer[blocks.size()];
+
+        /* Resolve the slot and transformer for each of the blocks */
+        for(int i = 0; i < blocks.size(); i++) {
+            String name = blocks.get(i);
+
+            int slot = layout.getSlot(name);
+            if(slot == -1) {
+                return null;
             }
+
+            binding.slots[i] = slot;
+            binding.transformers[i] = transformers.get(name);
         }
-        return true;
+
+        bindView(binding);
+        binding.program = getProgram(binding);
+
+        this.binding = binding;
+        return binding;
+    }
+
+    /**
+     * Gets the program to code the blocks of a binding with, generating it if this is the first binding.
+     *
+     * @param binding   The binding to get the program for.
+     * @return          The program, or null if the blocks of the binding are to be interpreted.
+     */
+    private PacketCodecProgram getProgram(Binding binding) {
+        if(!PacketCodecCompiler.isEnabled()) {
+            return null;
+        }
+
+        /* Get the type of each block */
+        VariableType[] types = new VariableType[binding.slots.length];
+        for(int i = 0; i < types.length; i++) {
+            types[i] = binding.layout.getType(binding.slots[i]);
+        }
+
+        GeneratedProgram generated = generatedProgram;
+        if(generated == null) {
+            generated = new GeneratedProgram();
+            generated.types = types;
+
+            /* Only numeric transformers of numeric blocks can be generated */
+            NumericTransformer[] numericTransformers = new NumericTransformer[types.length];
+            boolean supported = true;
+            for(int i = 0; i < types.length; i++) {
+                Transformer transformer = binding.transformers[i];
+                if(transformer == null) {
+                    continue;
+                }
+
+                if(!(transformer instanceof NumericTransformer) || types[i] == VariableType.STRING) {
+                    supported = false;
+                    break;
+                }
+                numericTransformers[i] = (NumericTransformer) transformer;
+            }
+
+            if(supported) {
+                generated.program = generate(types, numericTransformers);
+            }
+            generatedProgram = generated;
+        }
+
+        return Arrays.equals(generated.types, types) ? generated.program : null;
+    }
+
+    /**
+     * Generates a program to code blocks of the given types.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @return              The program, or null if it could not be generated.
+     */
+    protected abstract PacketCodecProgram generate(VariableType[] types, NumericTransformer[] transformers);
+
+    /**
+     * Resolves the offset of each slot in the coded bytes, so that the blocks can be read from a
+     * view. Only layouts of numeric blocks with numeric transformers have fixed offsets.
+     *
+     * @param binding   The binding to resolve the offsets for.
+     */
+    private static void bindView(Binding binding) {
+        PacketLayout layout = binding.layout;
+        if(layout.containsStrings()) {
+            return;
+        }
+
+        int[] offsets = new int[layout.getSlotCount()];
+        NumericTransformer[] numericTransformers = new NumericTransformer[offsets.length];
+        for(int slot = 0; slot < offsets.length; slot++) {
+            offsets[slot] = -1;
+        }
+
+        /* Assign each block the offset following the block before it */
+        int offset = 0;
+        for(int i = 0; i < binding.slots.length; i++) {
+            int slot = binding.slots[i];
+
+            Transformer transformer = binding.transformers[i];
+            if(transformer != null && !(transformer instanceof NumericTransformer)) {
+                return;
+            }
+
+            offsets[slot] = offset;
+            numericTransformers[slot] = (NumericTransformer) transformer;
+            offset += NumericType.getByteLength(layout.getNumericType(slot));
+        }
+
+        binding.viewOffsets = offsets;
+        binding.viewTransformers = numericTransformers;
+        binding.viewLength = offset;
+    }
+
+    /**
+     * Decodes the value in a slot of a packet from a buffer with a transformer.
+     *
+     * @param packet        The packet.
+     * @param slot          The slot of the value to decode.
+     * @param transformer   The transformer to decode the value with.
+     * @param buffer        The buffer to decode the value from.
+     */
+    protected static void decodeSlot(Packet packet, int slot, Transformer transformer, ByteBuffer buffer) {
+        NumericType type = packet.getLayout().getNumericType(slot);
+
+        /* Numeric transformers read the value straight from the buffer */
+        if(type != null && transformer instanceof NumericTransformer) {
+            packet.setLong(slot, ((NumericTransformer) transformer).read(buffer, type));
+            return;
+        }
+
+        packet.decodeSlot(slot, buffer);
+
+        /* The block is bound to the slot, so the decoded value is written back to the packet */
+        packet.getBlock(slot).decodeValue(transformer);
     }
 }
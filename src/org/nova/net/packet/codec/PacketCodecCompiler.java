@@ -0,0 +1,799 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net.packet.codec;
+
+import org.nova.net.packet.NumericType;
+import org.nova.net.packet.PacketLayout;
+import org.nova.net.packet.PacketVariable.VariableType;
+import org.nova.net.packet.transformers.NumericTransformer;
+import org.nova.net.packet.transformers.NumericTransformer.Translation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Generates a program for the blocks of a codec as a hidden class, which is a straight-line sequence
+ *          of buffer reads and writes. Numeric transformers are inlined as the shifts of their byte order and
+ *          the arithmetic of their translation. As the generated code never branches it does not need a
+ *          stack map table.
+ *
+ *          Programs are cached by the type of each block and the translation and byte order of each transformer,
+ *          so that codecs with the same blocks share a single generated class.
+ *
+ *          Hidden classes are only supported by Java 15 and later, on earlier versions or if generation is
+ *          disabled no programs are generated and the codecs interpret their blocks.
+ */
+public final class PacketCodecCompiler {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(PacketCodecCompiler.class.getName());
+
+    /**
+     * The internal name of the generated classes, the JVM appends a unique suffix to the name of each hidden class.
+     */
+    private static final String CLASS_NAME = "org/nova/net/packet/codec/GeneratedPacketCodecProgram";
+
+    /**
+     * The internal name of the program class.
+     */
+    private static final String PROGRAM_CLASS = "org/nova/net/packet/codec/PacketCodecProgram";
+
+    /**
+     * The internal name of the packet class.
+     */
+    private static final String PACKET_CLASS = "org/nova/net/packet/Packet";
+
+    /**
+     * The internal name of the byte buffer class.
+     */
+    private static final String BUFFER_CLASS = "java/nio/ByteBuffer";
+
+    /**
+     * The local variable indices of the generated method.
+     */
+    private static final int PACKET_LOCAL = 1, BUFFER_LOCAL = 2, SLOTS_LOCAL = 3, VALUE_LOCAL = 4;
+
+    /**
+     * The opcodes used by the generated code.
+     */
+    private static final int LCONST_0 = 0x09, BIPUSH = 0x10, SIPUSH = 0x11, LDC2_W = 0x14, LLOAD = 0x16,
+            ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, ALOAD_3 = 0x2d, IALOAD = 0x2e, LSTORE = 0x37,
+            POP = 0x57, IADD = 0x60, INEG = 0x74, LSHL = 0x79, LSHR = 0x7b, IAND = 0x7e, LAND = 0x7f,
+            LOR = 0x81, I2L = 0x85, L2I = 0x88, I2B = 0x91, I2S = 0x93, RETURN = 0xb1, INVOKEVIRTUAL = 0xb6,
+            INVOKESPECIAL = 0xb7;
+
+    /**
+     * The flag for if programs are generated.
+     */
+    private static volatile boolean enabled = true;
+
+    /**
+     * The map of program keys to the programs generated for them.
+     */
+    private static final ConcurrentMap<String, PacketCodecProgram> programs = new ConcurrentHashMap<String, PacketCodecProgram>();
+
+    /**
+     * The method used to define hidden classes, null if hidden classes are not supported.
+     */
+    private static final Method defineHiddenClass;
+
+    /**
+     * The empty array of options to define hidden classes with.
+     */
+    private static final Object hiddenClassOptions;
+
+    static {
+        Method method = null;
+        Object options = null;
+        try {
+            Class<?> optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(optionClass, 0);
+            method = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+        } catch(Exception ex) {
+            /* Hidden classes are not supported, the codecs will interpret their blocks */
+        }
+        defineHiddenClass = method;
+        hiddenClassOptions = options;
+    }
+
+    /**
+     * Constructs a new {@link PacketCodecCompiler};
+     *
+     * Private access as this class only has static methods.
+     */
+    private PacketCodecCompiler() {}
+
+    /**
+     * Sets if programs are generated for the codecs. This should be set before the codecs are created.
+     *
+     * @param enabled   The enabled flag.
+     */
+    public static void setEnabled(boolean enabled) {
+        PacketCodecCompiler.enabled = enabled;
+    }
+
+    /**
+     * Gets if programs are generated for the codecs.
+     *
+     * @return  If programs are generated.
+     */
+    public static boolean isEnabled() {
+        return enabled && defineHiddenClass != null;
+    }
+
+    /**
+     * Generates a program which decodes each block from a buffer into its slot.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @return              The program, or null if it could not be generated.
+     */
+    public static PacketCodecProgram compileDecoder(VariableType[] types, NumericTransformer[] transformers) {
+        return compile(types, transformers, true);
+    }
+
+    /**
+     * Generates a program which encodes the value in the slot of each block to a buffer.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @return              The program, or null if it could not be generated.
+     */
+    public static PacketCodecProgram compileEncoder(VariableType[] types, NumericTransformer[] transformers) {
+        return compile(types, transformers, false);
+    }
+
+    /**
+     * Gets the program for the blocks from the cache, generating it if it has not yet been generated.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @param decode        If the program decodes the blocks, otherwise it encodes them.
+     * @return              The program, or null if it could not be generated.
+     */
+    private static PacketCodecProgram compile(VariableType[] types, NumericTransformer[] transformers, boolean decode) {
+        if(!isEnabled()) {
+            return null;
+        }
+
+        String key = getKey(types, transformers, decode);
+        PacketCodecProgram program = programs.get(key);
+        if(program != null) {
+            return program;
+        }
+
+        program = generate(types, transformers, decode);
+        if(program == null) {
+            return null;
+        }
+
+        /* Another codec may have generated the same program in the meantime */
+        PacketCodecProgram existing = programs.putIfAbsent(key, program);
+        return existing != null ? existing : program;
+    }
+
+    /**
+     * Gets the key of a program in the cache.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @param decode        If the program decodes the blocks, otherwise it encodes them.
+     * @return              The key.
+     */
+    private static String getKey(VariableType[] types, NumericTransformer[] transformers, boolean decode) {
+        StringBuilder builder = new StringBuilder(decode ? "decode" : "encode");
+        for(int i = 0; i < types.length; i++) {
+            builder.append(',').append(types[i].name());
+
+            NumericTransformer transformer = transformers[i];
+            if(transformer != null) {
+                builder.append(':').append(transformer.getTranslation().name()).append(':').append(transformer.getOrder().name());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Generates a program.
+     *
+     * @param types         The type of each block.
+     * @param transformers  The numeric transformer for each block, null if the block is not transformed.
+     * @param decode        If the program decodes the blocks, otherwise it encodes them.
+     * @return              The program, or null if it could not be generated.
+     */
+    private static PacketCodecProgram generate(VariableType[] types, NumericTransformer[] transformers, boolean decode) {
+        try {
+            ClassFile classFile = new ClassFile();
+
+            /* Generate the code for each of the blocks */
+            Code code = new Code(classFile);
+            for(int i = 0; i < types.length; i++) {
+                NumericType type = PacketLayout.getNumericType(types[i]);
+                if(decode) {
+                    code.decode(i, type, transformers[i]);
+                } else {
+                    code.encode(i, type, transformers[i]);
+                }
+            }
+            code.op(RETURN);
+
+            /* Define the hidden class and create the program */
+            byte[] bytes = classFile.toByteArray(code);
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) defineHiddenClass.invoke(MethodHandles.lookup(), bytes, true, hiddenClassOptions);
+            return (PacketCodecProgram) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch(Exception ex) {
+            logger.log(Level.WARNING, "Failed to generate a packet codec program, falling back to interpreting the blocks", ex);
+            return null;
+        }
+    }
+
+    /**
+     * The class file of a generated program.
+     */
+    private static final class ClassFile {
+
+        /**
+         * The constant pool of the class file.
+         */
+        private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+        /**
+         * The output stream to write the constant pool with.
+         */
+        private DataOutputStream poolOutput = new DataOutputStream(pool);
+
+        /**
+         * The index of each constant that has been written to the constant pool.
+         */
+        private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+        /**
+         * The index of the next constant.
+         */
+        private int nextIndex = 1;
+
+        /**
+         * Gets the index of a constant, writing the constant to the constant pool if needed.
+         *
+         * @param key   The unique key of the constant.
+         * @param tag   The tag of the constant.
+         * @param value The value of the constant, either a string or long for utf8 and long constants,
+         *              otherwise the indices of the constants it references.
+         * @return      The index of the constant.
+         */
+        private int constant(String key, int tag, Object... value) throws IOException {
+            Integer index = constants.get(key);
+            if(index != null) {
+                return index;
+            }
+
+            poolOutput.writeByte(tag);
+            switch(tag) {
+
+                case 1:
+                    poolOutput.writeUTF((String) value[0]);
+                    break;
+
+                case 5:
+                    poolOutput.writeLong((Long) value[0]);
+                    break;
+
+                default:
+                    for(Object reference : value) {
+                        poolOutput.writeShort((Integer) reference);
+                    }
+                    break;
+            }
+
+            index = nextIndex;
+
+            /* Long constants take up two entries of the constant pool */
+            nextIndex += tag == 5 ? 2 : 1;
+            constants.put(key, index);
+            return index;
+        }
+
+        /**
+         * Gets the index of a utf8 constant.
+         *
+         * @param value The value of the constant.
+         * @return      The index of the constant.
+         */
+        private int utf8(String value) throws IOException {
+            return constant("utf8 " + value, 1, value);
+        }
+
+        /**
+         * Gets the index of a long constant.
+         *
+         * @param value The value of the constant.
+         * @return      The index of the constant.
+         */
+        private int longConstant(long value) throws IOException {
+            return constant("long " + value, 5, value);
+        }
+
+        /**
+         * Gets the index of a class constant.
+         *
+         * @param name  The internal name of the class.
+         * @return      The index of the constant.
+         */
+        private int classConstant(String name) throws IOException {
+            return constant("class " + name, 7, utf8(name));
+        }
+
+        /**
+         * Gets the index of a method reference constant.
+         *
+         * @param owner         The internal name of the class that declares the method.
+         * @param name          The name of the method.
+         * @param descriptor    The descriptor of the method.
+         * @return              The index of the constant.
+         */
+        private int method(String owner, String name, String descriptor) throws IOException {
+            int nameAndType = constant("nat " + name + descriptor, 12, utf8(name), utf8(descriptor));
+            return constant("method " + owner + "." + name + descriptor, 10, classConstant(owner), nameAndType);
+        }
+
+        /**
+         * Writes the class file.
+         *
+         * @param code  The code of the execute method.
+         * @return      The bytes of the class file.
+         */
+        private byte[] toByteArray(Code code) throws IOException {
+
+            /* Write each of the constants used by the class before the constant pool is written */
+            int thisClass = classConstant(CLASS_NAME);
+            int superClass = classConstant(PROGRAM_CLASS);
+            int superConstructor = method(PROGRAM_CLASS, "<init>", "()V");
+            int constructorName = utf8("<init>");
+            int constructorDescriptor = utf8("()V");
+            int executeName = utf8("execute");
+            int executeDescriptor = utf8("(L" + PACKET_CLASS + ";L" + BUFFER_CLASS + ";[I)V");
+            int codeName = utf8("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream os = new DataOutputStream(bytes);
+
+            os.writeInt(0xCAFEBABE);
+            os.writeShort(0);
+            os.writeShort(52);                                          // Java 8, there are no branches so there are no stack map frames
+            os.writeShort(nextIndex);
+            pool.writeTo(os);
+
+            os.writeShort(0x0031);                                      // Public, final and super
+            os.writeShort(thisClass);
+            os.writeShort(superClass);
+            os.writeShort(0);                                           // No interfaces
+            os.writeShort(0);                                           // No fields
+            os.writeShort(2);
+
+            /* Write the constructor, which only calls the super constructor */
+            byte[] constructorCode = { ALOAD_0, (byte) INVOKESPECIAL, (byte) (superConstructor >> 8), (byte) superConstructor, (byte) RETURN };
+            writeMethod(os, constructorName, constructorDescriptor, codeName, 1, 1, constructorCode);
+
+            /* Write the execute method */
+            writeMethod(os, executeName, executeDescriptor, codeName, Code.MAX_STACK, VALUE_LOCAL + 2, code.toByteArray());
+
+            os.writeShort(0);                                           // No attributes
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Writes a public method with a code attribute.
+         *
+         * @param os            The output stream to write the method to.
+         * @param name          The index of the name of the method.
+         * @param descriptor    The index of the descriptor of the method.
+         * @param codeName      The index of the name of the code attribute.
+         * @param maxStack      The maximum depth of the operand stack.
+         * @param maxLocals     The amount of local variable slots.
+         * @param code          The bytes of the code.
+         */
+        private static void writeMethod(DataOutputStream os, int name, int descriptor, int codeName,
+                                        int maxStack, int maxLocals, byte[] code) throws IOException {
+            os.writeShort(0x0001);
+            os.writeShort(name);
+            os.writeShort(descriptor);
+            os.writeShort(1);
+
+            os.writeShort(codeName);
+            os.writeInt(12 + code.length);
+            os.writeShort(maxStack);
+            os.writeShort(maxLocals);
+            os.writeInt(code.length);
+            os.write(code);
+            os.writeShort(0);                                           // No exception table
+            os.writeShort(0);                                           // No attributes
+        }
+    }
+
+    /**
+     * The code of the execute method of a generated program.
+     */
+    private static final class Code {
+
+        /**
+         * The maximum depth of the operand stack of the generated code.
+         */
+        private static final int MAX_STACK = 8;
+
+        /**
+         * The class file that the code is for.
+         */
+        private ClassFile classFile;
+
+        /**
+         * The bytes of the code.
+         */
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Constructs a new {@link Code};
+         *
+         * @param classFile The class file that the code is for.
+         */
+        private Code(ClassFile classFile) {
+            this.classFile = classFile;
+        }
+
+        /**
+         * Writes an opcode.
+         *
+         * @param opcode    The opcode.
+         */
+        private void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        /**
+         * Writes an opcode with a two byte operand.
+         *
+         * @param opcode    The opcode.
+         * @param operand   The operand.
+         */
+        private void op(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+        }
+
+        /**
+         * Pushes an integer constant, which must fit in a short.
+         *
+         * @param value The value of the constant.
+         */
+        private void push(int value) {
+            if(value >= -128 && value <= 127) {
+                op(BIPUSH);
+                op(value);
+            } else {
+                op(SIPUSH, value);
+            }
+        }
+
+        /**
+         * Invokes a method of the byte buffer.
+         *
+         * @param name          The name of the method.
+         * @param descriptor    The descriptor of the method.
+         */
+        private void invokeBuffer(String name, String descriptor) throws IOException {
+            op(INVOKEVIRTUAL, classFile.method(BUFFER_CLASS, name, descriptor));
+        }
+
+        /**
+         * Invokes a method of the packet.
+         *
+         * @param name          The name of the method.
+         * @param descriptor    The descriptor of the method.
+         */
+        private void invokePacket(String name, String descriptor) throws IOException {
+            op(INVOKEVIRTUAL, classFile.method(PACKET_CLASS, name, descriptor));
+        }
+
+        /**
+         * Pushes the packet and the slot of a block.
+         *
+         * @param block The index of the block.
+         */
+        private void pushSlot(int block) {
+            op(ALOAD_1);
+            op(ALOAD_3);
+            push(block);
+            op(IALOAD);
+        }
+
+        /**
+         * Masks the long on the top of the stack to its lowest byte.
+         */
+        private void maskByte() throws IOException {
+            op(LDC2_W, classFile.longConstant(0xFFL));
+            op(LAND);
+        }
+
+        /**
+         * Applies the translation of a transformer to the LSB of the value in the value local.
+         *
+         * @param translation   The translation.
+         */
+        private void translate(Translation translation) throws IOException {
+            if(translation == Translation.NONE) {
+                return;
+            }
+
+            op(LLOAD);
+            op(VALUE_LOCAL);
+            op(LDC2_W, classFile.longConstant(~0xFFL));
+            op(LAND);
+
+            op(LLOAD);
+            op(VALUE_LOCAL);
+            op(L2I);
+            if(translation != Translation.A) {
+                op(INEG);
+            }
+            if(translation != Translation.C) {
+                push(128);
+                op(IADD);
+            }
+            push(0xFF);
+            op(IAND);
+            op(I2L);
+
+            op(LOR);
+            op(LSTORE);
+            op(VALUE_LOCAL);
+        }
+
+        /**
+         * Generates the code to decode a block.
+         *
+         * @param block         The index of the block.
+         * @param type          The numeric type of the block, null if the block is a string.
+         * @param transformer   The transformer of the block.
+         */
+        private void decode(int block, NumericType type, NumericTransformer transformer) throws IOException {
+
+            /* Strings are decoded by the packet */
+            if(type == null) {
+                pushSlot(block);
+                op(ALOAD_2);
+                invokePacket("decodeSlot", "(IL" + BUFFER_CLASS + ";)V");
+                return;
+            }
+
+            if(transformer == null) {
+                pushSlot(block);
+                readValue(type);
+                invokePacket("setLong", "(IJ)V");
+                return;
+            }
+
+            /* Read each of the bytes into the value local with the shifts of the byte order */
+            op(LCONST_0);
+            op(LSTORE);
+            op(VALUE_LOCAL);
+            for(int shift : transformer.getShifts(type)) {
+                op(LLOAD);
+                op(VALUE_LOCAL);
+                op(ALOAD_2);
+                invokeBuffer("get", "()B");
+                op(I2L);
+                maskByte();
+                if(shift != 0) {
+                    push(shift);
+                    op(LSHL);
+                }
+                op(LOR);
+                op(LSTORE);
+                op(VALUE_LOCAL);
+            }
+
+            translate(transformer.getTranslation());
+
+            /* Sign extend the value and store it in the slot */
+            pushSlot(block);
+            op(LLOAD);
+            op(VALUE_LOCAL);
+            int extension = 64 - (NumericType.getByteLength(type) << 3);
+            if(extension != 0) {
+                push(extension);
+                op(LSHL);
+                push(extension);
+                op(LSHR);
+            }
+            invokePacket("setLong", "(IJ)V");
+        }
+
+        /**
+         * Generates the code to read a big endian value from the buffer as a long.
+         *
+         * @param type  The numeric type of the value.
+         */
+        private void readValue(NumericType type) throws IOException {
+            switch(type) {
+
+                case INT8:
+                    op(ALOAD_2);
+                    invokeBuffer("get", "()B");
+                    op(I2L);
+                    break;
+
+                case INT16:
+                    op(ALOAD_2);
+                    invokeBuffer("getShort", "()S");
+                    op(I2L);
+                    break;
+
+                case INT24:
+                    op(ALOAD_2);
+                    invokeBuffer("getShort", "()S");
+                    op(I2L);
+                    push(8);
+                    op(LSHL);
+                    op(ALOAD_2);
+                    invokeBuffer("get", "()B");
+                    op(I2L);
+                    maskByte();
+                    op(LOR);
+                    break;
+
+                case INT32:
+                    op(ALOAD_2);
+                    invokeBuffer("getInt", "()I");
+                    op(I2L);
+                    break;
+
+                case INT64:
+                    op(ALOAD_2);
+                    invokeBuffer("getLong", "()J");
+                    break;
+            }
+        }
+
+        /**
+         * Generates the code to encode a block.
+         *
+         * @param block         The index of the block.
+         * @param type          The numeric type of the block, null if the block is a string.
+         * @param transformer   The transformer of the block.
+         */
+        private void encode(int block, NumericType type, NumericTransformer transformer) throws IOException {
+
+            /* Strings are encoded by the packet */
+            if(type == null) {
+                pushSlot(block);
+                op(ALOAD_2);
+                invokePacket("encodeSlot", "(IL" + BUFFER_CLASS + ";)V");
+                return;
+            }
+
+            /* Load the value of the slot into the value local */
+            pushSlot(block);
+            invokePacket("getLong", "(I)J");
+            op(LSTORE);
+            op(VALUE_LOCAL);
+
+            if(transformer == null) {
+                writeValue(type);
+                return;
+            }
+
+            translate(transformer.getTranslation());
+
+            /* Write each of the bytes with the shifts of the byte order */
+            for(int shift : transformer.getShifts(type)) {
+                op(ALOAD_2);
+                op(LLOAD);
+                op(VALUE_LOCAL);
+                if(shift != 0) {
+                    push(shift);
+                    op(LSHR);
+                }
+                op(L2I);
+                op(I2B);
+                invokeBuffer("put", "(B)L" + BUFFER_CLASS + ";");
+                op(POP);
+            }
+        }
+
+        /**
+         * Generates the code to write the value local to the buffer as a big endian value.
+         *
+         * @param type  The numeric type of the value.
+         */
+        private void writeValue(NumericType type) throws IOException {
+            op(ALOAD_2);
+            op(LLOAD);
+            op(VALUE_LOCAL);
+            switch(type) {
+
+                case INT8:
+                    op(L2I);
+                    op(I2B);
+                    invokeBuffer("put", "(B)L" + BUFFER_CLASS + ";");
+                    break;
+
+                case INT16:
+                    op(L2I);
+                    op(I2S);
+                    invokeBuffer("putShort", "(S)L" + BUFFER_CLASS + ";");
+                    break;
+
+                case INT24:
+                    push(8);
+                    op(LSHR);
+                    op(L2I);
+                    op(I2S);
+                    invokeBuffer("putShort", "(S)L" + BUFFER_CLASS + ";");
+                    op(POP);
+
+                    op(ALOAD_2);
+                    op(LLOAD);
+                    op(VALUE_LOCAL);
+                    op(L2I);
+                    op(I2B);
+                    invokeBuffer("put", "(B)L" + BUFFER_CLASS + ";");
+                    break;
+
+                case INT32:
+                    op(L2I);
+                    invokeBuffer("putInt", "(I)L" + BUFFER_CLASS + ";");
+                    break;
+
+                case INT64:
+                    invokeBuffer("putLong", "(J)L" + BUFFER_CLASS + ";");
+                    break;
+            }
+            op(POP);
+        }
+
+        /**
+         * Gets the bytes of the code.
+         *
+         * @return  The bytes.
+         */
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.net.packet.codec;
+
+import org.nova.net.packet.Packet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Programs are generated by the {@link PacketCodecCompiler} for the blocks of a codec, and code each
+ *          of the blocks in order without looking up their types or transformers.
+ */
+public abstract class PacketCodecProgram {
+
+    /**
+     * Constructs a new {@link PacketCodecProgram};
+     *
+     * Protected access to prevent inline method construction.
+     */
+    protected PacketCodecProgram() {}
+
+    /**
+     * Codes each of the blocks of a packet.
+     *
+     * @param packet    The packet to code.
+     * @param buffer    The buffer to code the packet with.
+     * @param slots     The slot of each block, in coding order.
+     */
+    public abstract void execute(Packet packet, ByteBuffer buffer, int[] slots);
+}
@@ -25,7 +25,9 @@ package org.nova.net.packet.codec;
 import org.nova.core.ServiceType;
 import org.nova.util.meta.PacketData;
 import org.nova.net.packet.Packet;
-import org.nova.net.packet.PacketBlock;
+import org.nova.net.packet.PacketVariable.VariableType;
+import org.nova.net.packet.Transformer;
+import org.nova.net.packet.transformers.NumericTransformer;
 import org.nova.util.Decoder;
 
 import java.nio.ByteBuffer;
@@ -36,6 +38,8 @@ import java.nio.ByteBuffer;
  * Notes:
  *
  *          - Possible check if factory creates packets that have the correct blocks in the constructor?
+ *          - Flyweight decoders return a view over the buffer, which is reused by the decoder state for the
+ *            next packet. Anything which keeps the packet past decoding its message has to copy it.
  */
 public final class PacketDecoder extends PacketCodec implements Decoder<Packet, PacketDecoderState> {
 
@@ -49,6 +53,11 @@ public final class PacketDecoder extends PacketCodec implements Decoder<Packet,
      */
     private PacketData data;
 
+    /**
+     * The flag for if packets are decoded as views over the buffer.
+     */
+    private boolean flyweight;
+
     /**
      * Constructs a new {@link PacketDecoder};
      *
@@ -69,6 +78,40 @@ public final class PacketDecoder extends PacketCodec implements Decoder<Packet,
         return id;
     }
 
+    /**
+     * Sets if the packets are decoded as views over the buffer that they are read from, instead of copying
+     * each of their values. This only takes effect for packets with only numeric blocks and transformers.
+     *
+     * @param flyweight The flyweight flag.
+     */
+    public void setFlyweight(boolean flyweight) {
+        this.flyweight = flyweight;
+    }
+
+    /**
+     * Gets if the packets are decoded as views over the buffer that they are read from.
+     *
+     * @return  If the packets are decoded as views.
+     */
+    public boolean isFlyweight() {
+        return flyweight;
+    }
+
+    /**
+     * Resolves the blocks of this decoder to the slots of its packet, generating the program to decode them with.
+     * This is called when the decoder is created, otherwise it is done when the first packet is decoded.
+     */
+    public void compile() {
+        if(getBinding(data.getLayout()) == null) {
+            throw new IllegalStateException("packet does not contain required blocks");
+        }
+    }
+
+    @Override
+    protected PacketCodecProgram generate(VariableType[] types, NumericTransformer[] transformers) {
+        return PacketCodecCompiler.compileDecoder(types, transformers);
+    }
+
     /**
      * Decodes the packet.
      *
@@ -119,25 +162,47 @@ public final class PacketDecoder extends PacketCodec implements Decoder<Packet,
             return null;
         }
 
+        /* Wrap the view around the packet, skipping past its bytes */
+        if(flyweight) {
+            Binding binding = getBinding(data.getLayout());
+            if(binding != null && binding.viewOffsets != null && binding.viewLength <= size) {
+                int offset = buffer.position();
+                buffer.position(offset + size);
+
+                Packet view = state.getView();
+                view.wrap(binding.layout, buffer, offset, binding.viewOffsets, binding.viewTransformers);
+                return view;
+            }
+        }
+
         /* Create a new packet */
         Packet packet = data.create();
 
-        /* Check if the packet contains the required blocks */
-        if(!containsRequiredBlocks(packet)) {
+        /* Get the binding of the blocks to the slots of the packet */
+        Binding binding = getBinding(packet.getLayout());
+        if(binding == null) {
             throw new IllegalStateException("packet does not contain required blocks");
         }
 
-        /* Encode each of the blocks into the buffer */
-        for(String name : blocks) {
-            PacketBlock block = packet.getBlock(name);
+        /* Decode each of the blocks with the generated program */
+        if(binding.program != null) {
+            binding.program.execute(packet, buffer, binding.slots);
+            return packet;
+        }
 
-            /* Decode the block */
-            block.decode(state.getBuffer());
+        /* Decode each of the blocks from the buffer */
+        int[] slots = binding.slots;
+        Transformer[] slotTransformers = binding.transformers;
+        for(int i = 0; i < slots.length; i++) {
 
-            /* Check if there is a transformer for a block and transform the block if needed */
-            if(transformers.containsKey(name)) {
-                block.decodeValue(transformers.get(name));
+            /* Check if there is a transformer for a block and decode the block with it if needed */
+            if(slotTransformers[i] != null) {
+                decodeSlot(packet, slots[i], slotTransformers[i], buffer);
+                continue;
             }
+
+            /* Decode the block */
+            packet.decodeSlot(slots[i], buffer);
         }
 
         return packet;
@@ -22,6 +22,8 @@
 
 package org.nova.net.packet.codec;
 
+import org.nova.net.packet.Packet;
+
 import java.nio.ByteBuffer;
 
 /**
@@ -60,7 +62,12 @@ public final class PacketDecoderState extends PacketCodecState {
      * The current stage for parsing the packet.
      */
     private Stage stage;
-    
+
+    /**
+     * The view reused for each of the packets decoded by flyweight decoders.
+     */
+    private Packet view;
+
     /**
      * Constructs a new {@link PacketDecoderState};
      */
@@ -119,4 +126,16 @@ public final class PacketDecoderState extends PacketCodecState {
     public Stage getStage() {
         return stage;
     }
+
+    /**
+     * Gets the view to wrap around the packets decoded by flyweight decoders, creating it if needed.
+     *
+     * @return  The view.
+     */
+    public Packet getView() {
+        if(view == null) {
+            view = Packet.createView();
+        }
+        return view;
+    }
 }
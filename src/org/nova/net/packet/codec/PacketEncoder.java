@@ -23,11 +23,16 @@
 package org.nova.net.packet.codec;
 
 import org.nova.net.ISAACCipher;
+import org.nova.net.packet.NumericType;
 import org.nova.net.packet.Packet;
 import org.nova.net.packet.PacketBlock;
+import org.nova.net.packet.PacketVariable.VariableType;
+import org.nova.net.packet.Transformer;
+import org.nova.net.packet.transformers.NumericTransformer;
 import org.nova.util.Encoder;
 import org.nova.util.meta.PacketData;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 /**
@@ -37,6 +42,10 @@ import java.nio.ByteBuffer;
  *
  *          Blocks are encoded in order by which they were entered into the encoder.
  *          TODO: Fix this.
+ *
+ *          The id of a packet is spoofed with the cipher only once the whole packet has been encoded and its
+ *          length has been checked. A packet which does not fit, or which is too long for its header, leaves
+ *          the cipher untouched, so the ids of the packets encoded after it are still spoofed in order.
  */
 public final class PacketEncoder extends PacketCodec implements Encoder<ByteBuffer, PacketEncoderState> {
 
@@ -67,24 +76,40 @@ public final class PacketEncoder extends PacketCodec implements Encoder<ByteBuff
         /* Get the packet to encode from the state */
         Packet packet =  state.getPacket();
 
-        /* Check if the packet contains the required blocks */
-        if(containsRequiredBlocks(packet)) {
+        /* Get the binding of the blocks to the slots of the packet */
+        Binding binding = getBinding(packet.getLayout());
+        if(binding == null) {
             throw new IllegalStateException("packet does not contain required blocks");    // Possibly return null?
         }
 
         /* Calculate the length of the body */
+        int[] slots = binding.slots;
         int length = 0;
-        for(String name : blocks) {
-            PacketBlock block = packet.getBlock(name);
-            length += block.getLength();
+        for(int i = 0; i < slots.length; i++) {
+            length += packet.getSlotLength(slots[i]);
         }
 
         /* Calculate the length of the header */
         int headerLength = 1;                                                       // Include the opcode
         headerLength += getLengthForPacketSize(packet.getSize());
 
-        /* Allocate the byte buffer */
+        /* Allocate the byte buffer and encode the packet into it */
         ByteBuffer buffer = ByteBuffer.allocate(headerLength + length);
+        encode(state, buffer);
+
+        /* Flip the buffer for writing */
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes the id of the packet, spoofing it with the cipher if required. This must
+     * be called once for each packet, as it advances the cipher.
+     *
+     * @param state The state to encode the id for.
+     * @return      The encoded id.
+     */
+    private int encodeId(PacketEncoderState state) {
 
         /* Put the id of the packet */
         int encodedId = id;
@@ -102,30 +127,137 @@ public final class PacketEncoder extends PacketCodec implements Encoder<ByteBuff
             encodedId += cipher.getNextValue();
         }
 
-        buffer.put((byte) encodedId);
+        return encodedId;
+    }
+
+    /**
+     * Encodes the packet of a state directly into a buffer from its position. The length of a variety
+     * sized packet is reserved in the header and written once each of the blocks has been encoded, so
+     * the length does not need to be calculated beforehand. The cipher is only advanced once the packet
+     * has been encoded, so this may be called again with a larger buffer if the packet did not fit. An
+     * exception is thrown if the length of the packet does not fit in its header, without advancing the cipher.
+     *
+     * @param state     The state with the packet to encode.
+     * @param buffer    The buffer to encode the packet into.
+     * @return          If the packet fit in the buffer, otherwise the position of the buffer is reset.
+     */
+    public boolean encode(PacketEncoderState state, ByteBuffer buffer) {
 
-        /* Encode the size of the packet into the buffer */
-        if(packet.getSize() < 0) {
-            if(packet.getSize() == PacketData.VAR_SHORT) {
-                buffer.putShort((short) length);
-            } else {
-                buffer.put((byte) length);
+        /* Get the packet to encode from the state */
+        Packet packet = state.getPacket();
+
+        /* Get the binding of the blocks to the slots of the packet */
+        Binding binding = getBinding(packet.getLayout());
+        if(binding == null) {
+            throw new IllegalStateException("packet does not contain required blocks");
+        }
+
+        /* Check if the header, and the blocks if their length is fixed, fit in the buffer */
+        int start = buffer.position();
+        int headerLength = getLengthForPacketSize(packet.getSize());
+        boolean fixed = binding.viewOffsets != null;
+        if(buffer.remaining() < 1 + headerLength + (fixed ? binding.viewLength : 0)) {
+            return false;
+        }
+
+        /* The id is spoofed once the packet is known to have been encoded */
+        buffer.put((byte) id);
+
+        /* Reserve the length of the packet in the header */
+        int lengthPosition = buffer.position();
+        buffer.position(lengthPosition + headerLength);
+
+        if(fixed) {
+            encodeBlocks(packet, binding, buffer);
+        } else {
+
+            /* The length of strings is only known once they are encoded, so overflowing is expected */
+            try {
+                encodeBlocks(packet, binding, buffer);
+            } catch(BufferOverflowException ex) {
+
+                /* The packet did not fit, discard the bytes that were encoded */
+                buffer.position(start);
+                return false;
             }
         }
 
-        /* Encode each of the blocks into the buffer */
-        for(String name : blocks) {
-            PacketBlock block = packet.getBlock(name);
+        /* Write the length of the packet into the reserved header */
+        int length = buffer.position() - lengthPosition - headerLength;
+        if(packet.getSize() == PacketData.VAR_SHORT) {
+            if(length > 0xffff) {
+                buffer.position(start);
+                throw new IllegalStateException("packet length " + length + " exceeds the variety short header");
+            }
+            buffer.putShort(lengthPosition, (short) length);
+        } else if(packet.getSize() == PacketData.VAR_BYTE) {
+            if(length > 0xff) {
+                buffer.position(start);
+                throw new IllegalStateException("packet length " + length + " exceeds the variety byte header");
+            }
+            buffer.put(lengthPosition, (byte) length);
+        }
+
+        /* Spoof the id now that the packet has been encoded, this is the only point the cipher is advanced */
+        if(state.useCipher()) {
+            buffer.put(start, (byte) encodeId(state));
+        }
+        return true;
+    }
+
+    /**
+     * Encodes each of the blocks of a packet into a buffer.
+     *
+     * @param packet    The packet to encode.
+     * @param binding   The binding of the blocks to the slots of the packet.
+     * @param buffer    The buffer to encode the blocks to.
+     */
+    private static void encodeBlocks(Packet packet, Binding binding, ByteBuffer buffer) {
+        int[] slots = binding.slots;
+        if(binding.program != null) {
+            binding.program.execute(packet, buffer, slots);
+            return;
+        }
+
+        Transformer[] slotTransformers = binding.transformers;
+        for(int i = 0; i < slots.length; i++) {
 
             /* Check if there is a transformer for a block and transform the block if needed */
-            if(transformers.containsKey(name)) {
-                block.encodeValue(transformers.get(name));
+            if(slotTransformers[i] != null) {
+                encodeValue(packet, slots[i], slotTransformers[i], buffer);
+                continue;
             }
 
-            block.encode(buffer);
+            packet.encodeSlot(slots[i], buffer);
+        }
+    }
+
+    @Override
+    protected PacketCodecProgram generate(VariableType[] types, NumericTransformer[] transformers) {
+        return PacketCodecCompiler.compileEncoder(types, transformers);
+    }
+
+    /**
+     * Encodes the value in a slot of a packet with a transformer, leaving the value in the packet untouched.
+     *
+     * @param packet        The packet.
+     * @param slot          The slot of the value to encode.
+     * @param transformer   The transformer to encode the value with.
+     * @param buffer        The buffer to encode the transformed value to.
+     */
+    private static void encodeValue(Packet packet, int slot, Transformer transformer, ByteBuffer buffer) {
+        NumericType type = packet.getLayout().getNumericType(slot);
+
+        /* Numeric transformers write the value straight to the buffer */
+        if(type != null && transformer instanceof NumericTransformer) {
+            ((NumericTransformer) transformer).write(buffer, type, packet.getLong(slot));
+            return;
         }
 
-        return null;
+        /* Transform a copy of the value so that encoding does not change the packet */
+        PacketBlock block = packet.copyBlock(slot);
+        block.encodeValue(transformer);
+        block.encode(buffer);
     }
 
     /**
@@ -153,7 +285,7 @@ public final class PacketEncoder extends PacketCodec implements Encoder<ByteBuff
                 return 2;
         
             default:
-                throw new RuntimeException("Unhandled packet size");
+                return 0;
         }
     }
 }
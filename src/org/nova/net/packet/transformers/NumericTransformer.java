@@ -28,13 +28,17 @@ import org.nova.net.packet.Transformer;
 
 import java.nio.ByteBuffer;
 
-/* Yes nested class static imports, bite me */
-import static org.nova.net.packet.transformers.NumericTransformer.ByteOrder.*;
-
-import static org.nova.net.packet.NumericType.*;
-
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          The byte order of each numeric type is compiled into a plan when the transformer is constructed,
+ *          which is the bit shift of the value byte that is at each position of the encoded bytes. Values are
+ *          read and written a byte at a time with the plan, so no intermediate buffer is needed.
+ *
+ *          The translations only affect the LSB, and each of them is its own inverse modulo 256 so the same
+ *          translation is used to both encode and decode.
  */
 public final class NumericTransformer extends Transformer<Number, NumericBlock> {
 
@@ -80,16 +84,26 @@ public final class NumericTransformer extends Transformer<Number, NumericBlock>
         LITTLE,
 
         /**
-         * Special endianness used for integer variables.
+         * Special endianness used for integer variables, ordered as the bytes 1, 0, 3 and then 2.
          */
         MIDDLE,
 
         /**
-         * Special endianness used for integer variables.
+         * Special endianness used for integer variables, ordered as the bytes 2, 3, 0 and then 1.
          */
         INVERSE_MIDDLE
     }
 
+    /**
+     * The byte order of the middle endianness, from the LSB.
+     */
+    private static final int[] MIDDLE_ORDER = { 1, 0, 3, 2 };
+
+    /**
+     * The byte order of the inverse middle endianness, from the LSB.
+     */
+    private static final int[] INVERSE_MIDDLE_ORDER = { 2, 3, 0, 1 };
+
     /**
      * The translation to use to use to encode the value with.
      */
@@ -100,6 +114,22 @@ public final class NumericTransformer extends Transformer<Number, NumericBlock>
      */
     private ByteOrder order;
 
+    /**
+     * The plan for each numeric type, which is the shift of the value byte at each position of the
+     * encoded bytes. The plan is null if the byte order does not support the numeric type.
+     */
+    private int[][] plans;
+
+    /**
+     * The flag for if the LSB is negated by the translation.
+     */
+    private boolean negate;
+
+    /**
+     * The amount added to the LSB by the translation.
+     */
+    private int addend;
+
     /**
      * Constructs a new {@link NumericTransformer};
      *
@@ -119,219 +149,230 @@ public final class NumericTransformer extends Transformer<Number, NumericBlock>
         if(order == null) {
             throw new IllegalStateException("order cannot be null");
         }
+
+        /* Compile the plan for each of the numeric types */
+        NumericType[] types = NumericType.values();
+        plans = new int[types.length][];
+        for(NumericType type : types) {
+            plans[type.ordinal()] = createPlan(order, NumericType.getByteLength(type));
+        }
+
+        negate = translation == Translation.C || translation == Translation.S;
+        addend = translation == Translation.A || translation == Translation.S ? 128 : 0;
     }
 
     /**
-     * Check the state to assure that the provided type is compatible.
+     * Creates the plan for a byte order and length.
      *
-     * @param type  The given type to encode.
+     * @param order     The byte order.
+     * @param length    The length in bytes.
+     * @return          The plan, or null if the byte order does not support the length.
      */
-    private void checkState(NumericType type) {
-
-        /* Check to assure that if the order is middle that the numeric type is an integer */
-        if(order == MIDDLE || order == INVERSE_MIDDLE) {
-            if(type != INT32) {
-                throw new IllegalStateException("Middle and inverse middle endianness is reserved for integers only");
+    private static int[] createPlan(ByteOrder order, int length) {
+        int[] plan = new int[length];
+        for(int position = 0; position < length; position++) {
+
+            /* Get the index of the value byte from the LSB for the position */
+            int index;
+            switch(order) {
+
+                case BIG:
+                    index = length - position - 1;
+                    break;
+
+                case LITTLE:
+                    index = position;
+                    break;
+
+                case MIDDLE:
+                    if(length != 4) {
+                        return null;
+                    }
+                    index = MIDDLE_ORDER[position];
+                    break;
+
+                default:
+                    if(length != 4) {
+                        return null;
+                    }
+                    index = INVERSE_MIDDLE_ORDER[position];
+                    break;
             }
+
+            plan[position] = index << 3;
         }
+        return plan;
     }
 
-    @Override
-    public Number encode(NumericBlock block) {
-        
-        Number input = block.getValue();
-        NumericType type = block.getType();
+    /**
+     * Gets the plan for a numeric type.
+     *
+     * @param type  The numeric type.
+     * @return      The plan.
+     */
+    private int[] getPlan(NumericType type) {
+        int[] plan = plans[type.ordinal()];
 
-        checkState(type);
-        
-        int byteLength = NumericType.getByteLength(type);
-        ByteBuffer buffer = ByteBuffer.allocate(byteLength);
-
-        /* Store the number into the buffer */
-        switch(type) {
-
-            case INT8:
-                buffer.put(input.byteValue());
-                break;
-
-            case INT16:
-                buffer.putShort(input.shortValue());
-                break;
-            
-            case INT24:
-                buffer.putShort((short) (input.intValue() >> 8));
-                buffer.put(input.byteValue());
-                break;
-
-            case INT32:
-
-                /* So that we do not have to manipulate the variable later */
-                if(order != MIDDLE) {
-                    buffer.putInt(input.intValue());
-                } else {
-                    int value = input.intValue();
-                    buffer.putShort((short) (value >> 16));
-                    buffer.putShort((short) value);
-                }
-                break;
-
-            case INT64:
-                buffer.putLong(input.longValue());
-                break;
+        /* Check to assure that if the order is middle that the numeric type is an integer */
+        if(plan == null) {
+            throw new IllegalStateException("Middle and inverse middle endianness is reserved for integers only");
         }
+        return plan;
+    }
 
-        /* Apply the translation to the LSB */
-        int lsbPosition = byteLength - 1;
-        switch(translation) {
+    /**
+     * Gets the shift of the value byte at each position of the encoded bytes of a numeric type.
+     *
+     * @param type  The numeric type.
+     * @return      The shifts, in the order of the encoded bytes.
+     */
+    public int[] getShifts(NumericType type) {
+        return getPlan(type).clone();
+    }
 
-            case A:
-                buffer.put(lsbPosition, (byte) (buffer.get(lsbPosition) + 128));
-                break;
+    /**
+     * Gets the translation used with the LSB of the values.
+     *
+     * @return  The translation.
+     */
+    public Translation getTranslation() {
+        return translation;
+    }
 
-            case C:
-                buffer.put(lsbPosition, (byte) (-buffer.get(lsbPosition)));
-                break;
+    /**
+     * Gets the byte order of the values.
+     *
+     * @return  The byte order.
+     */
+    public ByteOrder getOrder() {
+        return order;
+    }
 
-            case S:
-                buffer.put(lsbPosition, (byte) (128 - buffer.get(lsbPosition)));
-                break;
-        }
-        
-        /* Invert the bytes in the buffer if we have to */
-        if(order == LITTLE || order == INVERSE_MIDDLE) {
-            byte[] bytes = buffer.array();
-            buffer.flip();
-            
-            for(int i = bytes.length - 1; i >= 0; i--) {
-                buffer.put(bytes[i]);
-            }
+    /**
+     * Applies the translation to the LSB of a value.
+     *
+     * @param value The value to translate.
+     * @return      The translated value.
+     */
+    private long translate(long value) {
+        int lsb = (int) value & 0xFF;
+        if(negate) {
+            lsb = -lsb;
         }
+        return value & ~0xFFL | lsb + addend & 0xFF;
+    }
 
-        /* Flip the buffer for reading */
-        buffer.flip();
-        
-        /* Read the new number from the buffer */
-        Number newNumber = null;
-        switch(type) {
-
-            case INT8:
-                newNumber = buffer.get();
-                break;
+    /**
+     * Sign extends a value from the length of a plan.
+     *
+     * @param value The value to sign extend.
+     * @param plan  The plan for the numeric type of the value.
+     * @return      The sign extended value.
+     */
+    private static long extend(long value, int[] plan) {
+        int shift = 64 - (plan.length << 3);
+        return value << shift >> shift;
+    }
 
-            case INT16:
-                newNumber = buffer.getShort();
-                break;
+    /**
+     * Reads and decodes a value from a buffer.
+     *
+     * @param buffer    The buffer to read the value from.
+     * @param type      The numeric type of the value.
+     * @return          The decoded value, sign extended to a long.
+     */
+    public long read(ByteBuffer buffer, NumericType type) {
+        int[] plan = getPlan(type);
 
-            case INT24:
-                newNumber = buffer.getShort() << 8 | buffer.get();
-                break;
+        long value = 0L;
+        for(int position = 0; position < plan.length; position++) {
+            value |= (buffer.get() & 0xFFL) << plan[position];
+        }
+        return extend(translate(value), plan);
+    }
 
-            case INT32:
-                newNumber = buffer.getInt();
-                break;
+    /**
+     * Reads and decodes a value from a buffer at an absolute index, without changing the position of the buffer.
+     *
+     * @param buffer    The buffer to read the value from.
+     * @param index     The index of the value in the buffer.
+     * @param type      The numeric type of the value.
+     * @return          The decoded value, sign extended to a long.
+     */
+    public long read(ByteBuffer buffer, int index, NumericType type) {
+        int[] plan = getPlan(type);
 
-            case INT64:
-                newNumber = buffer.getLong();
-                break;
+        long value = 0L;
+        for(int position = 0; position < plan.length; position++) {
+            value |= (buffer.get(index + position) & 0xFFL) << plan[position];
         }
-        
-        return newNumber;
+        return extend(translate(value), plan);
     }
 
+    /**
+     * Encodes and writes a value to a buffer.
+     *
+     * @param buffer    The buffer to write the value to.
+     * @param type      The numeric type of the value.
+     * @param value     The value to encode.
+     */
+    public void write(ByteBuffer buffer, NumericType type, long value) {
+        int[] plan = getPlan(type);
 
-    @Override
-    public Number decode(NumericBlock block) {
+        value = translate(value);
+        for(int position = 0; position < plan.length; position++) {
+            buffer.put((byte) (value >> plan[position]));
+        }
+    }
 
-        Number input = block.getValue();
+    @Override
+    public Number encode(NumericBlock block) {
         NumericType type = block.getType();
+        return NumericBlock.toNumber(encode(block.getValue().longValue(), type), type);
+    }
 
-        int byteLength = NumericType.getByteLength(type);
-        ByteBuffer buffer = ByteBuffer.allocate(byteLength);
-
-        /* Store the number into the buffer */
-        switch(type) {
-
-            case INT8:
-                buffer.put(input.byteValue());
-                break;
-
-            case INT16:
-                buffer.putShort(input.shortValue());
-                break;
-
-            case INT24:
-                buffer.putShort((short) (input.intValue() >> 8));
-                buffer.put(input.byteValue());
-                break;
-
-            case INT32:
-                buffer.putInt(input.intValue());
-                break;
-
-            case INT64:
-                buffer.putLong(input.longValue());
-                break;
-        }
+    /**
+     * Encodes a numeric value without boxing it into a block. The encoded value
+     * is the value of the encoded bytes when they are read as big endian.
+     *
+     * @param input The value to encode.
+     * @param type  The numeric type of the value.
+     * @return      The encoded value.
+     */
+    public long encode(long input, NumericType type) {
+        int[] plan = getPlan(type);
 
-        /* Invert the bytes in the buffer if we have to */
-        if(order == LITTLE || order == INVERSE_MIDDLE) {
-            byte[] bytes = buffer.array();
-            buffer.flip();
+        input = translate(input);
 
-            for(int i = bytes.length - 1; i >= 0; i--) {
-                buffer.put(bytes[i]);
-            }
+        long value = 0L;
+        for(int position = 0; position < plan.length; position++) {
+            value = value << 8 | input >> plan[position] & 0xFFL;
         }
+        return extend(value, plan);
+    }
 
-        /* Flip the buffer for reading */
-        buffer.flip();
-
-        /* Apply the translation to the LSB */
-        int lsbPosition = byteLength - 1;
-        switch(translation) {
-
-            case A:
-                buffer.put(lsbPosition, (byte) (buffer.get(lsbPosition) - 128));
-                break;
-
-            case C:
-                buffer.put(lsbPosition, (byte) (-buffer.get(lsbPosition)));
-                break;
+    @Override
+    public Number decode(NumericBlock block) {
+        NumericType type = block.getType();
+        return NumericBlock.toNumber(decode(block.getValue().longValue(), type), type);
+    }
 
-            case S:
-                buffer.put(lsbPosition, (byte) (128 - buffer.get(lsbPosition)));
-                break;
-        }
+    /**
+     * Decodes a numeric value without boxing it into a block. The value to decode
+     * is the value of the encoded bytes when they are read as big endian.
+     *
+     * @param input The value to decode.
+     * @param type  The numeric type of the value.
+     * @return      The decoded value.
+     */
+    public long decode(long input, NumericType type) {
+        int[] plan = getPlan(type);
 
-        /* Read the new number from the buffer */
-        Number newNumber = null;
-        switch(type) {
-
-            case INT8:
-                newNumber = buffer.get();
-                break;
-
-            case INT16:
-                newNumber = buffer.getShort();
-                break;
-
-            case INT24:
-                newNumber = buffer.getShort() << 8 | buffer.get();
-                break;
-
-            case INT32:
-                if(order != MIDDLE && order != INVERSE_MIDDLE) {
-                    newNumber = buffer.getInt();
-                } else {
-                    newNumber = buffer.getShort() | buffer.getShort() << 16;
-                }
-                break;
-
-            case INT64:
-                newNumber = buffer.getLong();
-                break;
+        long value = 0L;
+        int last = plan.length - 1;
+        for(int position = 0; position <= last; position++) {
+            value |= (input >> (last - position << 3) & 0xFFL) << plan[position];
         }
-
-        return newNumber;
+        return extend(translate(value), plan);
     }
 }
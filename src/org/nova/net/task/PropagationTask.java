@@ -44,6 +44,15 @@ public final class PropagationTask extends Task {
         this.context = context;
     }
 
+    /**
+     * Gets the event handler chain context used to propagate the event.
+     *
+     * @return  The context.
+     */
+    public EventHandlerChainContext getContext() {
+        return context;
+    }
+
     @Override
     public void execute() {
         context.doAll();
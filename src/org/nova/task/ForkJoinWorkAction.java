@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.task;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          Executes a range of tasks on a fork join pool. Ranges larger than the threshold are split in
+ *          half and forked, so the halves that the forking worker has not reached yet can be stolen by
+ *          idle workers. This keeps every worker busy when a few of the tasks take much longer than the
+ *          rest, since the work is not bound to a partition decided before it started executing.
+ *
+ *          A task which throws is logged and the rest of the range is still executed, since an action
+ *          which is executed without being joined would otherwise drop the exception silently.
+ */
+final class ForkJoinWorkAction extends RecursiveAction {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(ForkJoinWorkAction.class.getName());
+
+    /**
+     * The serial version id, the action is never serialized.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The tasks to execute.
+     */
+    private Task[] tasks;
+
+    /**
+     * The index of the first task in the range to execute.
+     */
+    private int from;
+
+    /**
+     * The index after the last task in the range to execute.
+     */
+    private int to;
+
+    /**
+     * The maximum amount of tasks to execute without splitting the range.
+     */
+    private int threshold;
+
+    /**
+     * The work queue to record the time taken to execute the tasks to, or null.
+     */
+    private PartitionedWorkQueue owner;
+
+    /**
+     * Constructs a new {@link ForkJoinWorkAction};
+     *
+     * @param tasks     The tasks to execute.
+     * @param from      The index of the first task in the range to execute.
+     * @param to        The index after the last task in the range to execute.
+     * @param threshold The maximum amount of tasks to execute without splitting the range.
+     * @param owner     The work queue to record the time taken to execute the tasks to, or null.
+     */
+    ForkJoinWorkAction(Task[] tasks, int from, int to, int threshold, PartitionedWorkQueue owner) {
+        this.tasks = tasks;
+        this.from = from;
+        this.to = to;
+        this.threshold = Math.max(1, threshold);
+        this.owner = owner;
+    }
+
+    @Override
+    protected void compute() {
+
+        /* Split the range in half until it is small enough to execute */
+        if(to - from > threshold) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForkJoinWorkAction(tasks, from, middle, threshold, owner),
+                      new ForkJoinWorkAction(tasks, middle, to, threshold, owner));
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            for(int i = from; i < to; i++) {
+                try {
+                    tasks[i].execute();
+                } catch(RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Exception while executing a task", ex);
+                }
+            }
+        } finally {
+            if(owner != null) {
+                owner.record(System.nanoTime() - start, to - from);
+            }
+        }
+    }
+}
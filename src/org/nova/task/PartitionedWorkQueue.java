@@ -22,24 +22,85 @@
 
 package org.nova.task;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by Hadyn Richard
+ *
+ * Notes:
+ *
+ *          By default tasks are cut into partitions of a fixed amount of tasks, and the partitions are
+ *          executed in parallel with no ordering between them.
+ *
+ *          When constructed with lanes, each task is added with a key and all of the tasks for the same
+ *          key are queued to the same lane. Lanes are kept between executions and each lane only ever has
+ *          a single thread draining it, so tasks with the same key are executed one after another in the
+ *          order they were added, even when they were added by different executions. A lane drains at
+ *          most the amount of tasks per queue before handing its thread back to the executor. Each lane
+ *          keeps three work queues which are swapped as tasks are handed from the adding thread to the
+ *          lane, so once they have grown to the amount of tasks per execution no memory is allocated.
+ *
+ *          When adaptive, the queue keeps a moving average of how long each task takes to execute and uses
+ *          it in place of the fixed amount of tasks per queue. If the tasks for an execution are expected to
+ *          take less than a small threshold they are executed on the calling thread, which avoids handing
+ *          them off to the executor at low load. Otherwise the tasks are cut into partitions which are each
+ *          expected to take about the target partition time, with at least as many partitions as the
+ *          executor has threads, so heavy tasks are split finer and spread over every thread.
+ *
+ *          When the executor is a fork join pool, the tasks are executed by a single action which splits itself
+ *          recursively, letting idle workers steal the work that the busy workers have not reached yet. When
+ *          adaptive, the action splits down to about the target partition time. With lanes the action is split
+ *          down to single lanes, so a lane is stolen whole and its tasks keep their order.
+ *
+ *          Once executed the tasks are removed from the queue. The partitions of an execution which is not
+ *          waited for are handed off to the threads executing them and taken back once they have finished.
  */
 public final class PartitionedWorkQueue {
 
     /**
-     * The current work queue.
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(PartitionedWorkQueue.class.getName());
+
+    /**
+     * The amount of time in nanoseconds that each partition should take to execute when adaptive.
+     */
+    private static final long TARGET_PARTITION_NANOS = 250000L;
+
+    /**
+     * The maximum amount of time in nanoseconds for the tasks of an execution to be executed
+     * on the calling thread when adaptive.
      */
-    private WorkQueue currentWorkQueue;
+    private static final long INLINE_NANOS = 50000L;
 
     /**
-     * The work queues to execute
+     * The amount of time in nanoseconds a task is expected to take before any have been measured.
      */
-    private Queue<WorkQueue> workQueues;
+    private static final long INITIAL_TASK_NANOS = 10000L;
+
+    /**
+     * The partitions of this queue, partitions past the amount in use are kept to be reused.
+     */
+    private List<Partition> partitions;
+
+    /**
+     * The partitions which were handed off and have finished executing, to be taken back for reuse.
+     */
+    private List<Partition> released;
+
+    /**
+     * The amount of partitions in use.
+     */
+    private int used;
 
     /**
      * The amount of tasks to queue per work queue.
@@ -47,21 +108,420 @@ public final class PartitionedWorkQueue {
     private int tasksPerQueue;
 
     /**
-     * The counter of how many tasks are left to insert into the queue.
+     * The amount of partitions which have yet to finish executing.
+     */
+    private AtomicInteger remaining;
+
+    /**
+     * The thread waiting for each of the partitions to finish executing.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * The lanes of this queue, or null if tasks are partitioned into chunks.
+     */
+    private Lane[] lanes;
+
+    /**
+     * The lanes scheduled by the current execution.
+     */
+    private Lane[] scheduledLanes;
+
+    /**
+     * The index of the lane to add the next task without a key to.
+     */
+    private int nextLane;
+
+    /**
+     * The flag for if the partitions are sized from the measured cost of the tasks.
+     */
+    private boolean adaptive;
+
+    /**
+     * The tasks added since the last execution when adaptive and not using lanes.
      */
-    private int counter;
+    private WorkQueue pending;
+
+    /**
+     * The moving average of the time in nanoseconds each task takes to execute.
+     */
+    private volatile long averageTaskNanos = INITIAL_TASK_NANOS;
 
     /**
      * Constructs a new {@link PartitionedWorkQueue};
+     *
+     * @param tasksPerQueue The amount of tasks to queue per partition.
      */
     public PartitionedWorkQueue(int tasksPerQueue) {
-        currentWorkQueue = new WorkQueue();
-        workQueues = new LinkedList<WorkQueue>();
-        counter = tasksPerQueue;
+        this(tasksPerQueue, 0);
+    }
+
+    /**
+     * Constructs a new {@link PartitionedWorkQueue};
+     *
+     * @param tasksPerQueue The amount of tasks to queue per partition, or for lanes the amount
+     *                      of tasks to execute before handing the thread back to the executor.
+     * @param lanes         The amount of lanes to order tasks with, must be a power of two or zero
+     *                      to partition tasks into chunks.
+     */
+    public PartitionedWorkQueue(int tasksPerQueue, int lanes) {
+        if(lanes < 0 || (lanes & lanes - 1) != 0) {
+            throw new IllegalArgumentException("lanes must be a power of two or zero");
+        }
+
+        partitions = new ArrayList<Partition>();
+        released = new ArrayList<Partition>();
+        remaining = new AtomicInteger();
+        pending = new WorkQueue();
+
+        /* Create each of the lanes */
+        if(lanes > 0) {
+            this.lanes = new Lane[lanes];
+            this.scheduledLanes = new Lane[lanes];
+            for(int i = 0; i < lanes; i++) {
+                this.lanes[i] = new Lane();
+            }
+        }
 
         this.tasksPerQueue = tasksPerQueue;
     }
 
+    /**
+     * Sets if the partitions are sized from the measured cost of the tasks instead of the fixed
+     * amount of tasks per queue. This must not be changed while there are tasks added to the queue.
+     *
+     * @param adaptive  If the queue should be adaptive.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Gets the moving average of the time each task takes to execute. Tasks are only measured
+     * when the queue is adaptive.
+     *
+     * @return  The average time in nanoseconds.
+     */
+    public long getAverageTaskNanos() {
+        return averageTaskNanos;
+    }
+
+    /**
+     * Records the time taken to execute a batch of tasks into the moving average. Concurrent
+     * updates may overwrite each other, which only makes the average slightly less precise.
+     *
+     * @param nanos The time taken in nanoseconds.
+     * @param tasks The amount of tasks that were executed.
+     */
+    void record(long nanos, int tasks) {
+        if(!adaptive || tasks <= 0) {
+            return;
+        }
+
+        long average = averageTaskNanos;
+        averageTaskNanos = average + (nanos / tasks - average) / 8;
+    }
+
+    /**
+     * Gets if the tasks for an execution are cheap enough to be executed on the calling thread.
+     *
+     * @param count The amount of tasks to execute.
+     * @return      If the tasks should be executed inline.
+     */
+    private boolean isInline(int count) {
+        return adaptive && count * averageTaskNanos <= INLINE_NANOS;
+    }
+
+    /**
+     * Gets the amount of tasks a lane should execute before handing its thread back to the executor.
+     *
+     * @return  The amount of tasks.
+     */
+    private int getLaneBudget() {
+        if(!adaptive) {
+            return tasksPerQueue;
+        }
+        return (int) Math.max(1L, TARGET_PARTITION_NANOS / Math.max(1L, averageTaskNanos));
+    }
+
+    /**
+     * Gets the amount of threads which an executor may execute tasks with.
+     *
+     * @param executor  The executor.
+     * @return          The amount of threads.
+     */
+    private static int getParallelism(Executor executor) {
+        if(executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+
+        /* Pools which create a thread for each task they are given have an unbounded maximum size */
+        if(executor instanceof ThreadPoolExecutor) {
+            int size = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+            if(size != Integer.MAX_VALUE) {
+                return Math.max(1, size);
+            }
+        }
+
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Cuts the pending tasks into partitions sized from the measured cost of the tasks.
+     *
+     * @param executor  The executor that the partitions will be executed on.
+     */
+    private void partitionPending(Executor executor) {
+        int count = pending.size();
+        int parallelism = getParallelism(executor);
+
+        /* Size the partitions to take the target time, but at least use each of the threads */
+        long perPartition = TARGET_PARTITION_NANOS / Math.max(1L, averageTaskNanos);
+        int limit = (int) Math.max(1L, Math.min(perPartition, (count + parallelism - 1) / parallelism));
+
+        for(int i = 0; i < count; i++) {
+            addToPartition(pending.get(i), limit);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Creates the action to execute the tasks on a fork join pool. When adaptive the pending tasks
+     * are split down to the target partition time, otherwise each partition is executed as a whole.
+     *
+     * @return  The created action.
+     */
+    private ForkJoinWorkAction createForkJoinAction() {
+        if(adaptive) {
+            Task[] tasks = new Task[pending.size()];
+            for(int i = 0; i < tasks.length; i++) {
+                tasks[i] = pending.get(i);
+            }
+            pending.clear();
+
+            int threshold = (int) Math.max(1L, TARGET_PARTITION_NANOS / Math.max(1L, averageTaskNanos));
+            return new ForkJoinWorkAction(tasks, 0, tasks.length, threshold, this);
+        }
+
+        remaining.addAndGet(used);
+        Task[] tasks = partitions.subList(0, used).toArray(new Task[used]);
+        return new ForkJoinWorkAction(tasks, 0, tasks.length, 1, null);
+    }
+
+    /**
+     * Executes the pending tasks on the calling thread.
+     */
+    private void executePending() {
+        int count = pending.size();
+        long start = System.nanoTime();
+        try {
+            pending.execute();
+        } finally {
+            record(System.nanoTime() - start, count);
+            pending.clear();
+        }
+    }
+
+    /**
+     * Signals that a task or partition has finished, waking the waiting thread if it was the last.
+     */
+    private void finished() {
+        if(remaining.decrementAndGet() == 0) {
+            Thread thread = waiter;
+            if(thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * The inline class for a partition of work, which executes a work queue
+     * and signals the waiting thread once each partition has finished.
+     */
+    private final class Partition extends Task {
+
+        /**
+         * The work queue for this partition.
+         */
+        private WorkQueue queue = new WorkQueue();
+
+        /**
+         * The flag for if the partition was handed off and is no longer in the list of partitions.
+         */
+        private volatile boolean handedOff;
+
+        @Override
+        public void execute() {
+            long start = System.nanoTime();
+            try {
+                queue.execute();
+            } finally {
+                record(System.nanoTime() - start, queue.size());
+
+                /* Give the partition back to be reused once it has been handed off */
+                if(handedOff) {
+                    queue.clear();
+                    handedOff = false;
+                    synchronized(released) {
+                        released.add(this);
+                    }
+                }
+
+                /* Wake the waiting thread if this was the last partition to finish */
+                finished();
+            }
+        }
+    }
+
+    /**
+     * The inline class for a lane, which executes its tasks one after another and is only
+     * ever executed by a single thread at a time.
+     */
+    private final class Lane extends Task {
+
+        /**
+         * The tasks added to the lane since it was last executed.
+         */
+        private WorkQueue staged = new WorkQueue();
+
+        /**
+         * The tasks handed to the lane which it has yet to take, guarded by the lane.
+         */
+        private WorkQueue handed = new WorkQueue();
+
+        /**
+         * The tasks being executed by the lane, only used by the thread executing the lane.
+         */
+        private WorkQueue draining = new WorkQueue();
+
+        /**
+         * The index of the next task to execute from the tasks being executed.
+         */
+        private int position;
+
+        /**
+         * The flag for if the lane has been submitted to execute its tasks.
+         */
+        private AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The executor which the lane was last submitted to.
+         */
+        private volatile Executor executor;
+
+        /**
+         * Moves the staged tasks to the lane and schedules the lane if it is not already executing.
+         *
+         * @param executor  The executor to hand the thread back to once the lane has executed its share.
+         * @return          If the lane was scheduled and must be executed by the caller.
+         */
+        private boolean hand(Executor executor) {
+            synchronized(this) {
+
+                /* Swap the queues if the lane has taken everything it was handed, otherwise append to them */
+                if(handed.size() == 0) {
+                    WorkQueue queue = handed;
+                    handed = staged;
+                    staged = queue;
+                } else {
+                    for(int i = 0; i < staged.size(); i++) {
+                        handed.add(staged.get(i));
+                    }
+                    staged.clear();
+                }
+            }
+
+            this.executor = executor;
+            return scheduled.compareAndSet(false, true);
+        }
+
+        /**
+         * Takes the tasks handed to the lane once it has executed each of the tasks it last took.
+         *
+         * @return  If there are any tasks to execute.
+         */
+        private boolean take() {
+            if(position < draining.size()) {
+                return true;
+            }
+
+            draining.clear();
+            position = 0;
+            synchronized(this) {
+                WorkQueue queue = draining;
+                draining = handed;
+                handed = queue;
+            }
+            return draining.size() > 0;
+        }
+
+        /**
+         * Gets if there are any tasks handed to the lane which it has yet to execute.
+         *
+         * @return  If there are tasks waiting.
+         */
+        private boolean hasWaiting() {
+            if(position < draining.size()) {
+                return true;
+            }
+
+            synchronized(this) {
+                return handed.size() > 0;
+            }
+        }
+
+        @Override
+        public void execute() {
+            int budget = getLaneBudget();
+            int executed = 0;
+            long start = System.nanoTime();
+            for(;;) {
+                while(take()) {
+                    Task task = draining.get(position++);
+                    try {
+                        task.execute();
+                    } catch(RuntimeException ex) {
+                        logger.log(Level.SEVERE, "Exception while executing a task", ex);
+                    } finally {
+                        finished();
+                    }
+
+                    /* Hand the thread back to the executor once the lane has executed its share */
+                    if(++executed >= budget && hasWaiting()) {
+                        record(System.nanoTime() - start, executed);
+                        executor.execute(wrap());
+                        return;
+                    }
+                }
+
+                /* Stop executing unless a task was handed over after the lane was found empty */
+                scheduled.set(false);
+                if(!hasWaiting() || !scheduled.compareAndSet(false, true)) {
+                    record(System.nanoTime() - start, executed);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a task to the lane for a key, tasks with the same key are executed in the order
+     * that they were added. If this queue does not have any lanes the key is ignored.
+     *
+     * @param task  The task to add.
+     * @param key   The key of the task.
+     */
+    public void add(Task task, int key) {
+        if(lanes == null) {
+            add(task);
+            return;
+        }
+
+        /* Spread the bits of the key so that keys which only differ in their high bits use different lanes */
+        int hash = key ^ key >>> 16;
+        lanes[hash & lanes.length - 1].staged.add(task);
+    }
+
     /**
      * Adds a task to this work queue.
      *
@@ -69,24 +529,277 @@ public final class PartitionedWorkQueue {
      */
     public void add(Task task) {
 
-        /* Save the current work queue if it contains the maximum amount of tasks per queue */
-        if(counter >= tasksPerQueue) {
-            workQueues.add(currentWorkQueue);
-            currentWorkQueue = new WorkQueue();
-            counter = tasksPerQueue;
+        /* Spread the tasks over the lanes if there is no key to order them by */
+        if(lanes != null) {
+            lanes[nextLane++ & lanes.length - 1].staged.add(task);
+            return;
+        }
+
+        /* Hold on to the tasks until they are executed to size the partitions from their cost */
+        if(adaptive) {
+            pending.add(task);
+            return;
+        }
+
+        addToPartition(task, tasksPerQueue);
+    }
+
+    /**
+     * Adds a task to the last partition in use, moving on to the next partition if it is full.
+     *
+     * @param task  The task to add.
+     * @param limit The maximum amount of tasks per partition.
+     */
+    private void addToPartition(Task task, int limit) {
+
+        /* Move on to the next partition if the current one contains the maximum amount of tasks per queue */
+        Partition partition = used == 0 ? null : partitions.get(used - 1);
+        if(partition == null || partition.queue.size() >= limit) {
+            if(used == partitions.size()) {
+                partitions.add(takeReleased());
+            }
+            partition = partitions.get(used++);
         }
 
-        currentWorkQueue.add(task);
+        partition.queue.add(task);
     }
 
     /**
-     * Executes all the tasks in each work queue on the executor.
+     * Takes back a partition which was handed off and has finished executing, or creates a new partition.
+     *
+     * @return  The partition.
+     */
+    private Partition takeReleased() {
+        synchronized(released) {
+            if(!released.isEmpty()) {
+                return released.remove(released.size() - 1);
+            }
+        }
+        return new Partition();
+    }
+
+    /**
+     * Executes all the tasks in each work queue on the executor. The tasks are handed off, so
+     * further tasks may be added and executed without waiting for these to finish.
      *
      * @param executor  The executor to use to execute tasks.
      */
     public void execute(Executor executor) {
-         for(WorkQueue queue : workQueues) {
-             executor.execute(new ExecuteWorkQueueTask(queue).wrap());
-         }
+        if(lanes != null) {
+            executeLanes(executor, false);
+            return;
+        }
+
+        /* Execute cheap work on the calling thread */
+        if(adaptive && isInline(pending.size())) {
+            executePending();
+            return;
+        }
+
+        /* Let the workers of a fork join pool split and steal the work */
+        if(executor instanceof ForkJoinPool) {
+            ForkJoinWorkAction action = createForkJoinAction();
+            handOffPartitions(null);
+            ((ForkJoinPool) executor).execute(action);
+            return;
+        }
+
+        /* Partition the work from its cost */
+        if(adaptive) {
+            partitionPending(executor);
+        }
+
+        remaining.addAndGet(used);
+        handOffPartitions(executor);
+    }
+
+    /**
+     * Removes the partitions in use from this queue, leaving them to the threads executing them so the
+     * next execution does not execute them again. Each partition is cleared once it has finished
+     * executing and then taken back to be reused.
+     *
+     * @param executor  The executor to execute the partitions on, or null if they are already being executed.
+     */
+    private void handOffPartitions(Executor executor) {
+        for(int i = 0; i < used; i++) {
+            partitions.get(i).handedOff = true;
+        }
+
+        if(executor != null) {
+            for(int i = 0; i < used; i++) {
+                executor.execute(partitions.get(i).wrap());
+            }
+        }
+
+        partitions.subList(0, used).clear();
+        used = 0;
+    }
+
+    /**
+     * Removes the tasks from each of the partitions in use once they have finished executing.
+     */
+    private void resetPartitions() {
+        for(int i = 0; i < used; i++) {
+            partitions.get(i).queue.clear();
+        }
+        used = 0;
+    }
+
+    /**
+     * Executes all the tasks in each work queue on the executor and waits for
+     * them to finish. The last work queue is executed on the calling thread. Tasks
+     * from earlier executions which were not waited for are also waited for.
+     *
+     * @param executor  The executor to use to execute tasks.
+     */
+    public void executeAndWait(Executor executor) {
+        if(lanes != null) {
+            executeLanes(executor, true);
+            return;
+        }
+
+        /* Execute cheap work on the calling thread */
+        if(adaptive && isInline(pending.size())) {
+            executePending();
+            return;
+        }
+
+        /* Let the workers of a fork join pool split and steal the work, helping out until it is done */
+        if(executor instanceof ForkJoinPool) {
+            try {
+                ((ForkJoinPool) executor).invoke(createForkJoinAction());
+            } finally {
+                resetPartitions();
+            }
+            return;
+        }
+
+        /* Partition the work from its cost */
+        if(adaptive) {
+            partitionPending(executor);
+        }
+
+        /* Check if there is anything to execute */
+        if(used == 0) {
+            return;
+        }
+
+        waiter = Thread.currentThread();
+        remaining.addAndGet(used);
+
+        for(int i = 0; i < used - 1; i++) {
+            executor.execute(partitions.get(i).wrap());
+        }
+
+        try {
+            partitions.get(used - 1).execute();
+        } finally {
+
+            /* Wait for the rest of the partitions to finish */
+            while(remaining.get() > 0) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+            resetPartitions();
+        }
+    }
+
+    /**
+     * Gets the amount of tasks staged to each of the lanes.
+     *
+     * @return  The amount of tasks.
+     */
+    private int getStagedCount() {
+        int count = 0;
+        for(Lane lane : lanes) {
+            count += lane.staged.size();
+        }
+        return count;
+    }
+
+    /**
+     * Executes the tasks staged to each lane on the executor. When waiting, the last lane to be scheduled
+     * is executed on the calling thread. When the executor is a fork join pool the scheduled lanes are
+     * executed by a single action which is split recursively, so idle workers steal whole lanes from
+     * the busy workers while the tasks within each lane keep their order.
+     *
+     * @param executor  The executor to use to execute tasks.
+     * @param wait      If the calling thread should wait for the tasks to finish.
+     */
+    private void executeLanes(Executor executor, boolean wait) {
+        int count = getStagedCount();
+
+        /* Check if there is anything to execute */
+        if(count == 0) {
+            return;
+        }
+
+        if(wait) {
+            waiter = Thread.currentThread();
+        }
+        remaining.addAndGet(count);
+
+        try {
+
+            /* Hand the staged tasks to each lane, collecting the lanes which were not already executing */
+            int amount = 0;
+            for(Lane lane : lanes) {
+                if(lane.staged.size() > 0 && lane.hand(executor)) {
+                    scheduledLanes[amount++] = lane;
+                }
+            }
+
+            /* Execute every lane on the calling thread if the work is cheap */
+            if(isInline(count)) {
+                for(int i = 0; i < amount; i++) {
+                    scheduledLanes[i].execute();
+                }
+            } else if(executor instanceof ForkJoinPool && amount > 1) {
+                Task[] tasks = new Task[amount];
+                System.arraycopy(scheduledLanes, 0, tasks, 0, amount);
+
+                ForkJoinWorkAction action = new ForkJoinWorkAction(tasks, 0, amount, 1, null);
+                if(wait) {
+                    ((ForkJoinPool) executor).invoke(action);
+                } else {
+                    ((ForkJoinPool) executor).execute(action);
+                }
+            } else {
+                int last = wait && amount > 0 ? amount - 1 : amount;
+                for(int i = 0; i < last; i++) {
+                    executor.execute(scheduledLanes[i].wrap());
+                }
+                if(last < amount) {
+                    scheduledLanes[last].execute();
+                }
+            }
+        } finally {
+            for(int i = 0; i < lanes.length; i++) {
+                scheduledLanes[i] = null;
+            }
+
+            /* Wait for the rest of the lanes to finish */
+            if(wait) {
+                while(remaining.get() > 0) {
+                    LockSupport.park(this);
+                }
+                waiter = null;
+            }
+        }
+    }
+
+    /**
+     * Removes all the tasks from this queue so that it can be reused. The queue
+     * must not be cleared while any of its tasks are still executing.
+     */
+    public void clear() {
+        resetPartitions();
+        pending.clear();
+
+        if(lanes != null) {
+            for(Lane lane : lanes) {
+                lane.staged.clear();
+            }
+        }
     }
 }
@@ -27,23 +27,32 @@ package org.nova.task;
  */
 public abstract class Task {
 
+    /**
+     * The runnable which wraps this task.
+     */
+    private Runnable runnable;
+
     /**
      * Executes the task.
      */
     public abstract void execute();
 
     /**
-     * Wraps this task into a runnable object.
+     * Wraps this task into a runnable object. The runnable is created once
+     * and reused for each following call.
      *
-     * @return  The created runnable object.
+     * @return  The runnable object.
      */
     public final Runnable wrap() {
-        return new Runnable() {
+        if(runnable == null) {
+            runnable = new Runnable() {
 
-            @Override
-            public void run() {
-                execute();
-            }
-        };
+                @Override
+                public void run() {
+                    execute();
+                }
+            };
+        }
+        return runnable;
     }
 }
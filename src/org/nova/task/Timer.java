@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.task;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * A handle to a task scheduled on a {@link TimerWheel}, which can be used to cancel the task.
+ */
+public final class Timer {
+
+    /**
+     * The wheel which the timer is scheduled on.
+     */
+    private TimerWheel wheel;
+
+    /**
+     * The previous timer in the slot, or the slot head if this is the first.
+     */
+    Timer previous;
+
+    /**
+     * The next timer in the slot, or the slot head if this is the last.
+     */
+    Timer next;
+
+    /**
+     * The task to execute when the timer expires.
+     */
+    Task task;
+
+    /**
+     * The tick that the timer expires on.
+     */
+    long deadline;
+
+    /**
+     * The amount of ticks between each execution, or zero if the task is only executed once.
+     */
+    int period;
+
+    /**
+     * The flag for if the timer has been cancelled.
+     */
+    boolean cancelled;
+
+    /**
+     * Constructs a new {@link Timer};
+     *
+     * @param wheel     The wheel which the timer is scheduled on.
+     * @param task      The task to execute when the timer expires.
+     * @param deadline  The tick that the timer expires on.
+     * @param period    The amount of ticks between each execution, or zero.
+     */
+    Timer(TimerWheel wheel, Task task, long deadline, int period) {
+        this.wheel = wheel;
+        this.task = task;
+        this.deadline = deadline;
+        this.period = period;
+    }
+
+    /**
+     * Constructs a new {@link Timer} as the head of a slot.
+     */
+    Timer() {
+        previous = this;
+        next = this;
+    }
+
+    /**
+     * Links this timer into a slot after its last timer.
+     *
+     * @param head  The head of the slot.
+     */
+    void link(Timer head) {
+        previous = head.previous;
+        next = head;
+        head.previous.next = this;
+        head.previous = this;
+    }
+
+    /**
+     * Unlinks this timer from its slot.
+     */
+    void unlink() {
+        previous.next = next;
+        next.previous = previous;
+        previous = null;
+        next = null;
+    }
+
+    /**
+     * Gets if this timer is linked into a slot.
+     *
+     * @return  If the timer is pending.
+     */
+    public boolean isPending() {
+        return next != null;
+    }
+
+    /**
+     * Cancels this timer. A periodic timer which is cancelled while its task is executing
+     * is not scheduled again.
+     *
+     * @return  If the timer was pending and has been removed from the wheel.
+     */
+    public boolean cancel() {
+        cancelled = true;
+        if(next == null) {
+            return false;
+        }
+
+        unlink();
+        wheel.removed();
+        return true;
+    }
+
+    /**
+     * Gets if this timer has been cancelled.
+     *
+     * @return  If the timer was cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the tick that this timer expires on next.
+     *
+     * @return  The deadline tick.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets the task for this timer.
+     *
+     * @return  The task.
+     */
+    public Task getTask() {
+        return task;
+    }
+}
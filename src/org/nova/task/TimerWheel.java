@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.task;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by Hadyn Richard
+ *
+ * A hashed hierarchical timing wheel which executes delayed and periodic tasks on game ticks.
+ *
+ * Notes:
+ *
+ *          The wheel has four levels. The first level has a slot for each of the next 256 ticks and each
+ *          of the following levels has 64 slots, which each cover 64 times the ticks of a slot on the level
+ *          below. A timer is linked into the slot of the lowest level that covers its deadline. Whenever the
+ *          first level wraps around, the timers in the next slot of the level above are moved down a level,
+ *          so each timer is moved at most three times before it expires. Scheduling and cancelling only link
+ *          and unlink a timer from its slot.
+ *
+ *          Timers which expire further away than the wheel covers, about 67 million ticks, are kept in the
+ *          furthest slot of the last level and are placed again each time that slot is reached.
+ *
+ *          The wheel is not thread safe, tasks must be scheduled and cancelled from the thread which
+ *          advances the wheel, which is normally the game tick. Advancing the wheel executes each of the
+ *          tasks which expire on the tick in a batch, in the order that they were scheduled. The batch stays
+ *          linked until each timer is executed, so a task may cancel a timer that expires later on the tick.
+ */
+public final class TimerWheel extends Task {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(TimerWheel.class.getName());
+
+    /**
+     * The amount of bits of the tick that index the slots of the first level.
+     */
+    private static final int FIRST_LEVEL_BITS = 8;
+
+    /**
+     * The amount of bits of the tick that index the slots of each of the following levels.
+     */
+    private static final int LEVEL_BITS = 6;
+
+    /**
+     * The amount of levels.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * The maximum amount of ticks that a timer can be placed ahead of the current tick.
+     */
+    private static final long MAXIMUM_DELAY = (1L << FIRST_LEVEL_BITS + LEVEL_BITS * (LEVELS - 1)) - 1L;
+
+    /**
+     * The heads of the slots for each level.
+     */
+    private Timer[][] slots;
+
+    /**
+     * The head of the timers which expire on the tick being advanced to.
+     */
+    private Timer expired;
+
+    /**
+     * The current tick, which is the last tick that was advanced to.
+     */
+    private long tick;
+
+    /**
+     * The amount of timers pending on the wheel.
+     */
+    private int size;
+
+    /**
+     * Constructs a new {@link TimerWheel};
+     */
+    public TimerWheel() {
+        slots = new Timer[LEVELS][];
+        for(int level = 0; level < LEVELS; level++) {
+            Timer[] heads = new Timer[1 << getBits(level)];
+            for(int i = 0; i < heads.length; i++) {
+                heads[i] = new Timer();
+            }
+            slots[level] = heads;
+        }
+        expired = new Timer();
+    }
+
+    /**
+     * Gets the amount of bits of the tick that index the slots of a level.
+     *
+     * @param level The level.
+     * @return      The amount of bits.
+     */
+    private static int getBits(int level) {
+        return level == 0 ? FIRST_LEVEL_BITS : LEVEL_BITS;
+    }
+
+    /**
+     * Gets the amount of bits that the tick is shifted by to index the slots of a level.
+     *
+     * @param level The level.
+     * @return      The shift.
+     */
+    private static int getShift(int level) {
+        return level == 0 ? 0 : FIRST_LEVEL_BITS + LEVEL_BITS * (level - 1);
+    }
+
+    /**
+     * Schedules a task to be executed once.
+     *
+     * @param task  The task to execute.
+     * @param delay The amount of ticks to wait before executing the task, the task is executed
+     *              on the next tick if the delay is less than one.
+     * @return      The timer for the task.
+     */
+    public Timer schedule(Task task, long delay) {
+        return schedule(task, delay, 0);
+    }
+
+    /**
+     * Schedules a task to be executed periodically.
+     *
+     * @param task      The task to execute.
+     * @param delay     The amount of ticks to wait before first executing the task.
+     * @param period    The amount of ticks between each execution, or zero to execute the task once.
+     * @return          The timer for the task.
+     */
+    public Timer schedule(Task task, long delay, int period) {
+        if(period < 0) {
+            throw new IllegalArgumentException("period cannot be negative");
+        }
+
+        Timer timer = new Timer(this, task, tick + Math.max(1L, delay), period);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Places a timer into the slot of the lowest level that covers its deadline.
+     *
+     * @param timer The timer to place.
+     */
+    private void place(Timer timer) {
+        long delay = Math.min(timer.deadline - tick, MAXIMUM_DELAY);
+        long target = tick + Math.max(0L, delay);
+
+        /* Find the lowest level which covers the delay */
+        int level = 0;
+        while(level < LEVELS - 1 && delay >= 1L << getShift(level + 1)) {
+            level++;
+        }
+
+        Timer[] heads = slots[level];
+        timer.link(heads[(int) (target >>> getShift(level)) & heads.length - 1]);
+    }
+
+    /**
+     * Advances the wheel to the next tick and executes each of the tasks which expire on it.
+     */
+    public void advance() {
+        tick++;
+
+        /* Move the timers down a level each time the level below wraps around */
+        for(int level = 1; level < LEVELS; level++) {
+            if((tick & (1L << getShift(level)) - 1L) != 0L) {
+                break;
+            }
+            cascade(level);
+        }
+
+        /* Detach the timers for the tick so that timers scheduled while executing are not included */
+        Timer head = slots[0][(int) tick & slots[0].length - 1];
+        if(head.next == head) {
+            return;
+        }
+
+        expired.next = head.next;
+        expired.previous = head.previous;
+        expired.next.previous = expired;
+        expired.previous.next = expired;
+        head.next = head;
+        head.previous = head;
+
+        /* Remove each timer from the batch before executing it, a task may cancel the timers after it */
+        while(expired.next != expired) {
+            Timer timer = expired.next;
+            timer.unlink();
+
+            /* Timers placed in the furthest slot may not have expired yet */
+            if(timer.deadline > tick) {
+                place(timer);
+                continue;
+            }
+
+            size--;
+            execute(timer);
+        }
+    }
+
+    /**
+     * Moves each of the timers in the current slot of a level into the levels below.
+     *
+     * @param level The level to cascade.
+     */
+    private void cascade(int level) {
+        Timer[] heads = slots[level];
+        Timer head = heads[(int) (tick >>> getShift(level)) & heads.length - 1];
+
+        Timer timer = head.next;
+        head.next = head;
+        head.previous = head;
+        while(timer != head) {
+            Timer next = timer.next;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Executes the task for an expired timer, scheduling it again if it is periodic.
+     *
+     * @param timer The expired timer.
+     */
+    private void execute(Timer timer) {
+        try {
+            timer.task.execute();
+        } catch(RuntimeException ex) {
+            logger.log(Level.SEVERE, "Exception while executing a timer task", ex);
+        }
+
+        /* Schedule periodic timers again unless they were cancelled or scheduled by the task */
+        if(timer.period > 0 && !timer.cancelled && !timer.isPending()) {
+            timer.deadline = tick + timer.period;
+            place(timer);
+            size++;
+        }
+    }
+
+    /**
+     * Advances the wheel by a single tick, so that the wheel can be added as a tick phase.
+     */
+    @Override
+    public void execute() {
+        advance();
+    }
+
+    /**
+     * Gets the current tick of the wheel.
+     *
+     * @return  The current tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Signals that a pending timer was cancelled.
+     */
+    void removed() {
+        size--;
+    }
+
+    /**
+     * Gets the amount of timers pending on the wheel.
+     *
+     * @return  The amount of timers.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -22,9 +22,10 @@
 
 package org.nova.task;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by Hadyn Richard
@@ -34,13 +35,13 @@ public final class WorkQueue {
     /**
      * The tasks to execute.
      */
-    private Queue<Task> tasks;
+    private List<Task> tasks;
 
     /**
      * Constructs a new {@link WorkQueue};
      */
     public WorkQueue() {
-        tasks = new LinkedList<Task>();
+        tasks = new ArrayList<Task>();
     }
 
     /**
@@ -56,19 +57,53 @@ public final class WorkQueue {
      * Executes each of the tasks.
      */
     public void execute() {
-        for(Task task : tasks) {
-            task.execute();
+        for(int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).execute();
         }
     }
 
     /**
-     * Executes each of the tasks in this queue from an executor.
+     * Executes each of the tasks in this queue from an executor. If the executor is a fork join
+     * pool the tasks are executed by a single action which is split recursively, so that idle
+     * workers can steal the tasks.
      *
      * @param executor  The executor to use to execute the tasks from.
      */
     public void execute(Executor executor) {
-        for(Task task : tasks) {
-            executor.execute(task.wrap());
+        if(executor instanceof ForkJoinPool) {
+            Task[] snapshot = tasks.toArray(new Task[tasks.size()]);
+            ((ForkJoinPool) executor).execute(new ForkJoinWorkAction(snapshot, 0, snapshot.length, 1, null));
+            return;
         }
+
+        for(int i = 0; i < tasks.size(); i++) {
+            executor.execute(tasks.get(i).wrap());
+        }
+    }
+
+    /**
+     * Gets a task from the queue.
+     *
+     * @param index The index of the task.
+     * @return      The task.
+     */
+    public Task get(int index) {
+        return tasks.get(index);
+    }
+
+    /**
+     * Removes all of the tasks from the queue so that it can be reused.
+     */
+    public void clear() {
+        tasks.clear();
+    }
+
+    /**
+     * Gets the amount of tasks in the queue.
+     *
+     * @return  The amount of tasks.
+     */
+    public int size() {
+        return tasks.size();
     }
 }
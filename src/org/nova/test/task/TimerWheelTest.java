@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2012, Hadyn Richard
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+
+package org.nova.test.task;
+
+import org.nova.task.Task;
+import org.nova.task.Timer;
+import org.nova.task.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Hadyn Richard
+ */
+public final class TimerWheelTest {
+
+    /**
+     * The main entry point of the test.
+     *
+     * @param args  The command line arguments.
+     */
+    public static void main(String[] args) {
+        try {
+
+            final TimerWheel wheel = new TimerWheel();
+            final List<String> fired = new ArrayList<String>();
+            final Timer[] timers = new Timer[3];
+
+            /* Schedule three timers on the same tick, the first of which cancels the second */
+            timers[0] = wheel.schedule(new Task() {
+                @Override
+                public void execute() {
+                    fired.add("A");
+                    timers[1].cancel();
+                }
+            }, 1);
+            timers[1] = wheel.schedule(new Task() {
+                @Override
+                public void execute() {
+                    fired.add("B");
+                }
+            }, 1);
+            timers[2] = wheel.schedule(new Task() {
+                @Override
+                public void execute() {
+                    fired.add("C");
+                }
+            }, 1);
+
+            wheel.advance();
+
+            /* Assert that the cancelled timer did not fire and the timer after it still did */
+            assert(fired.size() == 2);
+            assert(fired.get(0).equals("A"));
+            assert(fired.get(1).equals("C"));
+
+            /* Assert that no timers are left pending on the wheel */
+            assert(wheel.size() == 0);
+            assert(!timers[1].isPending() && timers[1].isCancelled());
+
+            System.out.println("Fired " + fired + " with " + wheel.size() + " timers pending");
+
+        } catch(Exception ex) {
+            System.out.println("Something went wrong: " + ex);
+        }
+    }
+}
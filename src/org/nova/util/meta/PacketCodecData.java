@@ -97,6 +97,7 @@ public abstract class PacketCodecData<T extends PacketCodec> {
 
         /* Create the new block and set all the fields */
         Block block = new Block();
+        block.name = name;
         block.useTransformer = false;
 
         blocks.add(block);
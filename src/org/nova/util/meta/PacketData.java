@@ -23,7 +23,7 @@
 package org.nova.util.meta;
 
 import org.nova.net.packet.Packet;
-import org.nova.net.packet.PacketBuilder;
+import org.nova.net.packet.PacketLayout;
 import org.nova.net.packet.PacketVariable;
 
 import java.util.LinkedList;
@@ -59,6 +59,11 @@ public final class PacketData {
      */
     private List<PacketVariable> variables;
 
+    /**
+     * The layout compiled from the variables of the packet.
+     */
+    private PacketLayout layout;
+
     /**
      * Constructs a new {@link PacketData};
      * 
@@ -115,6 +120,9 @@ public final class PacketData {
      */
     public void addVariable(PacketVariable variable) {
         variables.add(variable);
+
+        /* The layout has to be compiled again to include the variable */
+        layout = null;
     }
 
     /**
@@ -127,45 +135,43 @@ public final class PacketData {
     }
 
     /**
-     * Creates a new packet from this scaffold.
+     * Compiles the variables of the packet into a layout, giving each variable a slot.
      *
-     * @return             The created packet.
+     * @return  The compiled layout.
      */
-    public Packet create() {
+    public PacketLayout compile() {
+        layout = new PacketLayout(name, size, variables);
+        return layout;
+    }
 
-        /* Create a new packet build from the descriptor */
-        PacketBuilder builder = new PacketBuilder(name, size);
-
-        /* Create a block for each variable */
-        for(PacketVariable variable : variables) {
-            switch(variable.getType()) {
-
-                case INT8:
-                    builder.putInt8(variable.getName());
-                    break;
-
-                case INT16:
-                    builder.putInt16(variable.getName());
-                    break;
-                
-                case INT24:
-                    builder.putInt24(variable.getName());
-                    break;
-
-                case INT32:
-                    builder.putInt32(variable.getName());
-                    break;
-
-                case INT64:
-                    builder.putInt64(variable.getName());
-                    break;
-
-                case STRING:
-                    builder.putString(variable.getName());
-                    break;
-            }
+    /**
+     * Gets the layout for the packet, compiling it if it has not yet been compiled.
+     *
+     * @return  The layout.
+     */
+    public PacketLayout getLayout() {
+        PacketLayout layout = this.layout;
+        if(layout == null) {
+            layout = compile();
         }
+        return layout;
+    }
 
-        return builder.toPacket();
+    /**
+     * Gets the name of the packet.
+     *
+     * @return  The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a new packet from this scaffold.
+     *
+     * @return             The created packet.
+     */
+    public Packet create() {
+        return getLayout().create();
     }
 }
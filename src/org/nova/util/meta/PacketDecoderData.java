@@ -29,6 +29,11 @@ import org.nova.net.packet.codec.PacketDecoder;
  */
 public final class PacketDecoderData extends PacketCodecData<PacketDecoder> {
 
+    /**
+     * The flag for if the decoder decodes packets as views over the buffer.
+     */
+    private boolean flyweight;
+
     /**
      * Constructs a new {@link PacketDecoderData};
      *
@@ -39,6 +44,15 @@ public final class PacketDecoderData extends PacketCodecData<PacketDecoder> {
         super(id, packet);
     }
 
+    /**
+     * Sets if the decoder decodes packets as views over the buffer.
+     *
+     * @param flyweight The flyweight flag.
+     */
+    public void setFlyweight(boolean flyweight) {
+        this.flyweight = flyweight;
+    }
+
     /**
      * Creates a new packet decoder from the packet codec information.
      *
@@ -49,6 +63,7 @@ public final class PacketDecoderData extends PacketCodecData<PacketDecoder> {
 
         /* Create the packet decoder */
         PacketDecoder decoder = new PacketDecoder(id, packetData);
+        decoder.setFlyweight(flyweight);
 
         for(Block block : blocks) {
 
@@ -63,6 +78,9 @@ public final class PacketDecoderData extends PacketCodecData<PacketDecoder> {
             }
         }
 
+        /* Resolve the blocks and generate the program for the decoder */
+        decoder.compile();
+
         return decoder;
     }
 }
@@ -23,8 +23,13 @@
 package org.nova.util.script.context;
 
 import org.nova.net.MessageHandler;
+import org.nova.net.packet.PacketLayout;
+import org.nova.util.meta.PacketData;
 import org.nova.util.script.EnvironmentContext;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Created by Hadyn Richard
  */
@@ -35,6 +40,11 @@ public final class GameEnvironmentContext extends EnvironmentContext {
      */
     private MessageHandler messageHandler;
 
+    /**
+     * The packet meta data for the server, mapped by the name of each packet.
+     */
+    private Map<String, PacketData> packetData = Collections.emptyMap();
+
     /**
      * Constructs a new {@link GameEnvironmentContext};
      */
@@ -57,4 +67,25 @@ public final class GameEnvironmentContext extends EnvironmentContext {
     public MessageHandler getMessageHandler() {
         return messageHandler;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the packet meta data for the server.
+     *
+     * @param packetData    The packet meta data, mapped by the name of each packet.
+     */
+    public void setPacketData(Map<String, PacketData> packetData) {
+        this.packetData = packetData;
+    }
+
+    /**
+     * Gets the layout of a packet, so that scripts can resolve the slots of its variables
+     * once when they are registered.
+     *
+     * @param packetName    The name of the packet.
+     * @return              The layout, or null if there is no packet with the name.
+     */
+    public PacketLayout getPacketLayout(String packetName) {
+        PacketData data = packetData.get(packetName);
+        return data == null ? null : data.getLayout();
+    }
+}